@@ -0,0 +1,40 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.6.8"
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    jmh(project(":lib"))
+    jmh("jakarta.persistence:jakarta.persistence-api:3.0.0")
+    jmhAnnotationProcessor("org.hibernate.orm:hibernate-jpamodelgen:6.1.2.Final")
+    jmhAnnotationProcessor("com.mammb:jpa-fluent-modelgen:0.10.0")
+    jmh("com.h2database:h2:2.1.214")
+    jmh("org.eclipse.persistence:eclipselink:4.0.0-M3")
+    jmh("org.hibernate.orm:hibernate-core:6.1.2.Final")
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = Charsets.UTF_8.name()
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+// ./gradlew -Pbenchmarks :benchmarks:jmh
+// ./gradlew -Pbenchmarks :benchmarks:jmh -Pjmh.includes=QueryBenchmark
+jmh {
+    jmhVersion.set("1.35")
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    (project.findProperty("jmh.includes") as String?)?.let { includes.add(it) }
+}
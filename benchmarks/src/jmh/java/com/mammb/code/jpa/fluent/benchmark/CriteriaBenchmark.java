@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.benchmark;
+
+import com.mammb.code.jpa.fluent.benchmark.entity.Issue;
+import com.mammb.code.jpa.fluent.benchmark.entity.IssueModel;
+import com.mammb.code.jpa.fluent.query.Filter;
+import com.mammb.code.jpa.fluent.query.Mapper;
+import com.mammb.code.jpa.fluent.query.QueryBuilder;
+import com.mammb.code.jpa.fluent.query.Sorts;
+import jakarta.persistence.criteria.CriteriaQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of the criteria query construction, without accessing the database.
+ * @author Naotsugu Kobayashi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CriteriaBenchmark {
+
+    @Benchmark
+    public CriteriaQuery<Issue> simple(DatabaseState state) {
+        return QueryBuilder.criteriaQuery(state.em.getCriteriaBuilder(), IssueModel.root(),
+            Mapper.of(), Filter.empty(), Sorts.empty());
+    }
+
+
+    @Benchmark
+    public CriteriaQuery<Issue> composedFilter(DatabaseState state) {
+        Filter<Issue, IssueModel.Root_> filter = Filter.<Issue, IssueModel.Root_>of(r -> r.getTitle().eq("issue1"))
+            .and(r -> r.getPriority().gt(1))
+            .and(r -> r.getProject().getName().like("project%"))
+            .or(r -> r.getId().lt(100L));
+        return QueryBuilder.criteriaQuery(state.em.getCriteriaBuilder(), IssueModel.root(),
+            Mapper.of(), filter, Sorts.empty());
+    }
+
+
+    @Benchmark
+    public CriteriaQuery<Issue> composedSorts(DatabaseState state) {
+        Sorts<Issue, IssueModel.Root_> sorts = Sorts.<Issue, IssueModel.Root_>of(
+            r -> r.getPriority().desc(), r -> r.getTitle().asc(), r -> r.getId().asc());
+        return QueryBuilder.criteriaQuery(state.em.getCriteriaBuilder(), IssueModel.root(),
+            Mapper.of(), Filter.empty(), sorts);
+    }
+
+
+    @Benchmark
+    public CriteriaQuery<IssueDto> construct(DatabaseState state) {
+        return QueryBuilder.criteriaQuery(state.em.getCriteriaBuilder(), IssueModel.root(),
+            Mappers.issueDto(r -> r.getId(), r -> r.getTitle()), Filter.empty(), Sorts.empty());
+    }
+
+}
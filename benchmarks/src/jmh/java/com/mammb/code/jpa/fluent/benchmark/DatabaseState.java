@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.benchmark;
+
+import com.mammb.code.jpa.fluent.benchmark.entity.Issue;
+import com.mammb.code.jpa.fluent.benchmark.entity.Project;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The database populated with issues, for each persistence provider and data size.
+ * @author Naotsugu Kobayashi
+ */
+@State(Scope.Benchmark)
+public class DatabaseState {
+
+    /** The name of persistence unit. */
+    @Param({ "eclipselink", "hibernate" })
+    public String provider;
+
+    /** The number of issues. */
+    @Param({ "100", "10000" })
+    public int size;
+
+    public EntityManagerFactory emf;
+    public EntityManager em;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = Persistence.createEntityManagerFactory(provider);
+        em = emf.createEntityManager();
+        em.getTransaction().begin();
+        Project project = null;
+        for (int i = 0; i < size; i++) {
+            if (i % 100 == 0) {
+                project = new Project();
+                project.setName("project" + i / 100);
+                em.persist(project);
+            }
+            Issue issue = new Issue();
+            issue.setTitle("issue" + i);
+            issue.setPriority(i % 5);
+            issue.setProject(project);
+            em.persist(issue);
+            if (i % 1000 == 0) {
+                em.flush();
+                em.clear();
+                project = em.merge(project);
+            }
+        }
+        em.getTransaction().commit();
+        em.clear();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        emf.close();
+    }
+
+}
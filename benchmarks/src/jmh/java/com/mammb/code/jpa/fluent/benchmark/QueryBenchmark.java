@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.benchmark;
+
+import com.mammb.code.jpa.fluent.benchmark.entity.Issue;
+import com.mammb.code.jpa.fluent.benchmark.entity.IssueModel;
+import com.mammb.code.jpa.fluent.query.Page;
+import com.mammb.code.jpa.fluent.query.Querying;
+import com.mammb.code.jpa.fluent.query.SlicePoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of the query execution against the in-memory database.
+ * The persistence context is cleared on each invocation, so that the entities are always read from the database.
+ * @author Naotsugu Kobayashi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueryBenchmark {
+
+    @Benchmark
+    public List<Issue> toList(DatabaseState state) {
+        state.em.clear();
+        return Querying.of(IssueModel.root())
+            .filter(r -> r.getPriority().ge(0))
+            .toList().on(state.em);
+    }
+
+
+    @Benchmark
+    public List<IssueDto> toListConstruct(DatabaseState state) {
+        return Querying.of(IssueModel.root())
+            .map(Mappers.issueDto(r -> r.getId(), r -> r.getTitle()))
+            .filter(r -> r.getPriority().ge(0))
+            .toList().on(state.em);
+    }
+
+
+    @Benchmark
+    public Page<Issue> toPage(DatabaseState state) {
+        state.em.clear();
+        return Querying.of(IssueModel.root())
+            .filter(r -> r.getPriority().ge(0))
+            .sorted(r -> r.getId().asc())
+            .toPage(SlicePoint.of(state.size / 100, 50)).on(state.em);
+    }
+
+
+    @Benchmark
+    public long toStream(DatabaseState state) {
+        state.em.clear();
+        return Querying.of(IssueModel.root())
+            .filter(r -> r.getPriority().ge(0))
+            .sorted(r -> r.getId().asc())
+            .toForwardingStream(500).on(state.em)
+            .count();
+    }
+
+}
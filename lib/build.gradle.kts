@@ -18,6 +18,7 @@ dependencies {
     testAnnotationProcessor("com.mammb:jpa-fluent-modelgen:0.10.0")
     testImplementation("com.h2database:h2:2.1.214")
     testImplementation("org.eclipse.persistence:eclipselink:4.0.0-M3")
+    testImplementation("org.hibernate.orm:hibernate-core:6.1.2.Final")
 }
 
 tasks.named<Test>("test") {
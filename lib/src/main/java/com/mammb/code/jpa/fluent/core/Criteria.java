@@ -60,6 +60,17 @@ public class Criteria {
     }
 
 
+    /**
+     * The selector that returns a path.
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of path
+     */
+    public interface PathSelector<E, R extends RootAware<E>, U> {
+        Criteria.AnyExpression<U, ? extends Path<U>> apply(R root);
+    }
+
+
     interface CommonType extends BuilderAware {}
 
     public static class AnyPath<E> implements AnyExpression<E, Path<E>>, CommonType {
@@ -248,6 +259,10 @@ public class Criteria {
         default NumberExp<E> max() { return new NumberExp<>(() -> builder().max(get()), builder()); }
         default NumberExp<E> min() { return new NumberExp<>(() -> builder().min(get()), builder()); }
         default NumberExp<Double> avg() { return new NumberExp<>(() -> builder().avg(get()), builder()); }
+        default NumberExp<E> sum(E y) { return new NumberExp<>(() -> builder().sum(get(), y), builder()); }
+        default NumberExp<E> sum(Expression<? extends E> y) { return new NumberExp<>(() -> builder().sum(get(), y), builder()); }
+        default NumberExp<E> diff(E y) { return new NumberExp<>(() -> builder().diff(get(), y), builder()); }
+        default NumberExp<E> diff(Expression<? extends E> y) { return new NumberExp<>(() -> builder().diff(get(), y), builder()); }
 
         default Expression<Long> toLong() { return builder().toLong(get()); }
         default Expression<Integer> toInteger() { return builder().toInteger(get()); }
@@ -78,7 +78,17 @@ public interface Pagination {
      * @return {@code true} if the link to the last page is valid
      */
     default boolean isLastPageEnable() {
-        return Objects.nonNull(getTotalPages()) && getTotalPages() > getCurrentPage() + 1;
+        return isTotalExact() && getTotalPages() > getCurrentPage() + 1;
+    }
+
+
+    /**
+     * Gets whether the number of total pages is exact.
+     * If {@code false}, there are more pages than {@link #getTotalPages()}, e.g. "more than 10,000".
+     * @return {@code true} if the number of total pages is exact
+     */
+    default boolean isTotalExact() {
+        return getSlice() instanceof Page<?> page && page.isTotalExact();
     }
 
 
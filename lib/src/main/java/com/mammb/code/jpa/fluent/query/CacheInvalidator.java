@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The invalidator of the cached counts and query results.
+ * <p>
+ * Each entity type has a generation, which is incremented when the entity type is changed.
+ * The {@link CountCache} and the {@link ResultCache} entries hold the generations of the entity types
+ * at the time of loading, and are treated as stale when any of them has changed.
+ * <p>
+ * {@link #invalidate(EntityManager, Class)} is called on save and delete through the repository traits,
+ * and on bulk update and delete. The generation is incremented at the time of writing,
+ * and again after the completion of the transaction if the provider supports the notification,
+ * so the values loaded by a concurrent reader before the commit are not reused after the commit.
+ * Changes made in other ways, e.g. in another process or by the cascade to the related entities,
+ * are not detected, and the cached values may be stale until the time to live expires.
+ * @author Naotsugu Kobayashi
+ */
+public final class CacheInvalidator {
+
+    /** The generation of each entity type, incremented on invalidation. */
+    private static final ClassValue<AtomicLong> GENERATIONS = new ClassValue<>() {
+        @Override
+        protected AtomicLong computeValue(Class<?> type) {
+            return new AtomicLong();
+        }
+    };
+
+
+    /** The entity types changed in the current transaction of each {@link EntityManager}. */
+    private static final Map<EntityManager, Set<Class<?>>> PENDING = new WeakHashMap<>();
+
+
+    private CacheInvalidator() { }
+
+
+    /**
+     * Invalidate the cached counts and query results of the given entity type changed by the given
+     * {@link EntityManager}, at the time of writing and after the completion of the current transaction.
+     * @param em the {@link EntityManager} which changed the entity type
+     * @param entityClass the class of entity changed
+     */
+    public static void invalidate(EntityManager em, Class<?> entityClass) {
+        invalidate(entityClass);
+        if (!em.isJoinedToTransaction()) {
+            return;
+        }
+        synchronized (PENDING) {
+            PENDING.computeIfAbsent(em, k -> new HashSet<>()).add(entityClass);
+        }
+        if (!Provider.of(em).afterCompletion(em, () -> completed(em))) {
+            synchronized (PENDING) {
+                PENDING.remove(em);
+            }
+        }
+    }
+
+
+    /**
+     * Invalidate the cached counts and query results of the given entity type and its super types in all caches.
+     * @param entityClass the class of entity changed
+     */
+    public static void invalidate(Class<?> entityClass) {
+        for (Class<?> c = entityClass; Objects.nonNull(c) && c != Object.class; c = c.getSuperclass()) {
+            GENERATIONS.get(c).incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Get the current generation of the given entity type.
+     * @param entityClass the class of entity
+     * @return the current generation
+     */
+    static long generation(Class<?> entityClass) {
+        return GENERATIONS.get(entityClass).get();
+    }
+
+
+    /**
+     * Get the current generations of the given entity types,
+     * and the entity types reachable from them by the single-valued associations, which can be navigated by paths.
+     * @param metamodel the {@link Metamodel}
+     * @param entities the entity types
+     * @return the current generations
+     */
+    static Map<Class<?>, Long> generations(Metamodel metamodel, Set<Class<?>> entities) {
+        Map<Class<?>, Long> generations = new HashMap<>();
+        Deque<Class<?>> deque = new ArrayDeque<>(entities);
+        Set<Class<?>> visited = new HashSet<>();
+        while (!deque.isEmpty()) {
+            Class<?> type = deque.pop();
+            if (!visited.add(type)) {
+                continue;
+            }
+            ManagedType<?> managedType = metamodel.managedType(type);
+            if (managedType instanceof EntityType<?>) {
+                generations.put(type, generation(type));
+            }
+            for (SingularAttribute<?, ?> attribute : managedType.getSingularAttributes()) {
+                switch (attribute.getPersistentAttributeType()) {
+                    case MANY_TO_ONE, ONE_TO_ONE, EMBEDDED -> deque.push(attribute.getJavaType());
+                    default -> { }
+                }
+            }
+        }
+        return Map.copyOf(generations);
+    }
+
+
+    /**
+     * Get whether the given generations are current.
+     * @param generations the generations taken by {@link #generations(Metamodel, Set)}
+     * @return {@code true} if no entity type has been invalidated since
+     */
+    static boolean isCurrent(Map<Class<?>, Long> generations) {
+        return generations.entrySet().stream().allMatch(e -> generation(e.getKey()) == e.getValue());
+    }
+
+
+    private static void completed(EntityManager em) {
+        Set<Class<?>> types;
+        synchronized (PENDING) {
+            types = PENDING.remove(em);
+        }
+        if (Objects.nonNull(types)) {
+            types.forEach(CacheInvalidator::invalidate);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+
+/**
+ * The key of the caches of the queries, which is the {@link EntityManagerFactory} and the fingerprint of the query.
+ * <p>
+ * The factory is referred to weakly and compared by identity, so the cache does not keep a closed factory
+ * reachable. The entries of the factory collected are no longer equal to any key, and are discarded by the eviction.
+ * @param factory the reference to the {@link EntityManagerFactory}
+ * @param fingerprint the fingerprint of the query
+ * @author Naotsugu Kobayashi
+ */
+record CacheKey(FactoryRef factory, Fingerprint fingerprint) {
+
+    /**
+     * Create a new {@link CacheKey}.
+     * @param factory the {@link EntityManagerFactory}
+     * @param fingerprint the fingerprint of the query
+     * @return a new {@link CacheKey}
+     */
+    static CacheKey of(EntityManagerFactory factory, Fingerprint fingerprint) {
+        return new CacheKey(new FactoryRef(factory), fingerprint);
+    }
+
+
+    /**
+     * The weak reference to the {@link EntityManagerFactory}, which is equal to the reference to the same factory.
+     */
+    static final class FactoryRef extends WeakReference<EntityManagerFactory> {
+
+        private final int hash;
+
+        FactoryRef(EntityManagerFactory factory) {
+            super(Objects.requireNonNull(factory));
+            this.hash = System.identityHashCode(factory);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            return o instanceof FactoryRef that && hash == that.hash
+                && Objects.nonNull(get()) && get() == that.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
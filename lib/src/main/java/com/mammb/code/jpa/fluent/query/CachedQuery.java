@@ -0,0 +1,274 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.RootAware;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The query whose results are cached in the {@link ResultCache}.
+ * <p>
+ * The result is keyed by the query including the captured values of the filter, and by the
+ * {@link jakarta.persistence.EntityManagerFactory} referred to weakly,
+ * and is reused until the time to live expires, or until any entity type the query touches
+ * is invalidated by {@link CacheInvalidator#invalidate(EntityManager, Class)}.
+ * The entity types touched are the roots, the joins and the fetches of the query and its subqueries,
+ * and the entity types reachable from them by the single-valued associations, which can be navigated by paths.
+ * <pre>
+ *     List&lt;Issue&gt; list = Querying.of(IssueModel.root())
+ *         .filter(issue -> issue.getTitle().eq("foo"))
+ *         .cached(Duration.ofMinutes(5))
+ *         .toList().on(em);
+ * </pre>
+ * The cached result is shared by all callers. The entities in the result are not shared, but cached
+ * as the references by the id, and are read by the id in the persistence context of each caller,
+ * with a query for each entity type. So the cache suits the reference data and the projections.
+ * The invalidation occurs at the time of writing, and again after the commit.
+ * @param <E> the type of entity of root
+ * @param <R> the type of root element
+ * @param <U> the type of query result
+ * @author Naotsugu Kobayashi
+ */
+public interface CachedQuery<E, R extends RootAware<E>, U> {
+
+    /**
+     * Get the optional single result.
+     * @return the optional single result
+     */
+    Query<Optional<U>> toOptional();
+
+
+    /**
+     * Get the single result.
+     * @return the single result
+     */
+    Query<U> toSingle();
+
+
+    /**
+     * Get the {@link List} result.
+     * The list is unmodifiable.
+     * @return the {@link List} result
+     */
+    Query<List<U>> toList();
+
+
+    /**
+     * Create a {@link CachedQuery} of the given query.
+     * @param source the source query
+     * @param ttl the time to live of result
+     * @param cache the {@link ResultCache}
+     * @param <E> the type of entity of root
+     * @param <R> the type of root element
+     * @param <U> the type of query result
+     * @return a {@link CachedQuery}
+     */
+    static <E, R extends RootAware<E>, U> CachedQuery<E, R, U> of(
+            CreateQuery<E, R, U> source, Duration ttl, ResultCache cache) {
+
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(cache);
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive. " + ttl);
+        }
+        long ttlNanos = ttl.toNanos();
+
+        return new CachedQuery<>() {
+
+            @Override
+            public Query<Optional<U>> toOptional() {
+                return em -> Optional.ofNullable(cached(em, "single", Sorts.empty(), TypedQuery::getSingleResult));
+            }
+
+            @Override
+            public Query<U> toSingle() {
+                return em -> cached(em, "single", Sorts.empty(), TypedQuery::getSingleResult);
+            }
+
+            @Override
+            public Query<List<U>> toList() {
+                return em -> cached(em, "list", source.sorts(),
+                    query -> Collections.unmodifiableList(new ArrayList<>(query.getResultList())));
+            }
+
+            private <T> T cached(EntityManager em, String kind, Sorts<E, R> sorts, Function<TypedQuery<U>, T> loader) {
+
+                FetchMapper.rejectCollections(source.rootSource(), source.mapper(), em.getCriteriaBuilder());
+
+                var fingerprint = Fingerprint.of(kind, source.rootSource().rootClass(), source.rootSource(),
+                    source.mapper(), source.filter(), sorts, source.hints());
+                if (!fingerprint.isCacheable()) {
+                    return loader.apply(QueryBuilder.query(em,
+                        source.rootSource(), source.mapper(), source.filter(), sorts, source.hints()));
+                }
+
+                var key = CacheKey.of(em.getEntityManagerFactory(), fingerprint);
+                long now = System.nanoTime();
+                if (cache.get(key) instanceof Entry entry && entry.isFresh(now)) {
+                    Resolved resolved = resolve(em, entry.value());
+                    if (Objects.nonNull(resolved)) {
+                        @SuppressWarnings("unchecked")
+                        T value = (T) resolved.value();
+                        return value;
+                    }
+                }
+
+                Set<Class<?>> entities = new HashSet<>();
+                long start = System.nanoTime();
+                TypedQuery<U> query = QueryTrace.createQuery(em, QueryBuilder.criteriaQuery(em.getCriteriaBuilder(),
+                    source.rootSource(), source.mapper(), source.filter(), sorts, entities), start, false,
+                    source.rootSource(), source.mapper(), source.filter(), sorts);
+                source.hints().apply(query);
+                // the generations are taken before the execution, so a concurrent write makes the result stale
+                Map<Class<?>, Long> generations = CacheInvalidator.generations(em.getMetamodel(), entities);
+                T value = loader.apply(query);
+                Object cached = referenced(em, value);
+                if (Objects.nonNull(cached)) {
+                    cache.put(key, new Entry(cached, now + ttlNanos, generations));
+                }
+                return value;
+            }
+
+            /**
+             * Replace the entities in the given result with the references, since the entities belong to
+             * the persistence context of the caller.
+             * @param em the {@link EntityManager}
+             * @param value the result
+             * @return the value to be cached, or {@code null} if any entity has no single id attribute
+             */
+            private Object referenced(EntityManager em, Object value) {
+                if (value instanceof List<?> list) {
+                    List<Object> ret = new ArrayList<>(list.size());
+                    for (Object element : list) {
+                        Object referenced = referenced(em, element);
+                        if (Objects.isNull(referenced) && Objects.nonNull(element)) {
+                            return null;
+                        }
+                        ret.add(referenced);
+                    }
+                    return Collections.unmodifiableList(ret);
+                }
+                Class<?> entityClass = entityClass(value);
+                if (Objects.isNull(entityClass)) {
+                    return value;
+                }
+                if (!em.getMetamodel().entity(entityClass).hasSingleIdAttribute()) {
+                    return null;
+                }
+                return new Ref(entityClass, em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(value));
+            }
+
+            /**
+             * Resolve the references in the given cached value in the persistence context of the caller.
+             * @param em the {@link EntityManager}
+             * @param cached the cached value
+             * @return the resolved value, or {@code null} if any entity no longer exists
+             */
+            private Resolved resolve(EntityManager em, Object cached) {
+                List<?> list = (cached instanceof List<?> l) ? l : Collections.singletonList(cached);
+                Map<Ref, Object> entities = new HashMap<>();
+                Map<Class<?>, List<Object>> ids = new HashMap<>();
+                list.stream().filter(Ref.class::isInstance).map(Ref.class::cast).distinct()
+                    .forEach(ref -> ids.computeIfAbsent(ref.type(), k -> new ArrayList<>()).add(ref.id()));
+                for (Map.Entry<Class<?>, List<Object>> e : ids.entrySet()) {
+                    for (Object entity : find(em, e.getKey(), e.getValue())) {
+                        entities.put(new Ref(e.getKey(),
+                            em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity)), entity);
+                    }
+                    if (entities.size() < e.getValue().size()) {
+                        return null;
+                    }
+                }
+                List<Object> resolved = list.stream()
+                    .map(element -> (element instanceof Ref ref) ? entities.get(ref) : element)
+                    .toList();
+                return new Resolved((cached instanceof List<?>) ? resolved : resolved.get(0));
+            }
+
+            /**
+             * The reference to the entity in the cached value.
+             * @param type the class of entity
+             * @param id the id of entity
+             */
+            private record Ref(Class<?> type, Object id) { }
+
+            /**
+             * The value resolved from the cached value.
+             * @param value the resolved value
+             */
+            private record Resolved(Object value) { }
+
+            /**
+             * The cache entry.
+             * @param value the result
+             * @param expiresAt the expiration time in nanoseconds
+             * @param generations the generations of the entity types touched when the result is loaded
+             */
+            private record Entry(Object value, long expiresAt, Map<Class<?>, Long> generations) {
+                boolean isFresh(long now) {
+                    return now - expiresAt < 0 && CacheInvalidator.isCurrent(generations);
+                }
+            }
+        };
+    }
+
+
+    private static <T> List<T> find(EntityManager em, Class<T> type, List<Object> ids) {
+        EntityType<T> entityType = em.getMetamodel().entity(type);
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<T> cq = cb.createQuery(type);
+        Root<T> root = cq.from(type);
+        cq.where(root.get(entityType.getId(entityType.getIdType().getJavaType())).in(ids));
+        return em.createQuery(cq).getResultList();
+    }
+
+
+    private static Class<?> entityClass(Object obj) {
+        if (Objects.isNull(obj)) {
+            return null;
+        }
+        for (Class<?> c = obj.getClass(); c != null; c = c.getSuperclass()) {
+            if (c.isAnnotationPresent(Entity.class)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+
+}
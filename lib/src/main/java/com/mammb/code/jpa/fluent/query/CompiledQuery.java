@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.RootAware;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Parameter;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaQuery;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The compiled query.
+ * <p>
+ * The criteria query is translated once per query shape, and cached in the {@link CompiledQueryCache}.
+ * Values which vary from call to call should be given as parameters created by
+ * {@link Filters#param(Class, String)}, and bound by {@link #bind(String, Object)}.
+ * <pre>
+ *     var compiled = Querying.of(IssueModel.root())
+ *         .filter(issue -> issue.getTitle().eq(Filters.param(String.class, "title")))
+ *         .compile();
+ *     List&lt;Issue&gt; list = compiled.bind("title", "foo").toList().on(em);
+ * </pre>
+ * @param <E> the type of entity of root
+ * @param <R> the type of root element
+ * @param <U> the type of query result
+ * @author Naotsugu Kobayashi
+ */
+public interface CompiledQuery<E, R extends RootAware<E>, U> {
+
+    /**
+     * Bind the value to the named parameter.
+     * @param name the name of parameter
+     * @param value the value of parameter
+     * @return the new {@link CompiledQuery} with the value bound
+     */
+    CompiledQuery<E, R, U> bind(String name, Object value);
+
+
+    /**
+     * Get the count result.
+     * @return the count result
+     */
+    Query<Long> count();
+
+
+    /**
+     * Get the count result, cached in the given {@link CountCache} for each bound values.
+     * @param cache the {@link CountCache}
+     * @return the count result
+     */
+    Query<Long> count(CountCache cache);
+
+
+    /**
+     * Get the optional single result.
+     * @return the optional single result
+     */
+    Query<Optional<U>> toOptional();
+
+
+    /**
+     * Get the single result.
+     * @return the single result
+     */
+    Query<U> toSingle();
+
+
+    /**
+     * Get the {@link List} result.
+     * @return the {@link List} result
+     */
+    Query<List<U>> toList();
+
+
+    /**
+     * Get the {@link Slice} result.
+     * @param slicePoint the slice point
+     * @return the {@link Slice} result
+     */
+    Query<Slice<U>> toSlice(SlicePoint slicePoint);
+
+
+    /**
+     * Get the {@link Page} result.
+     * @param slicePoint the slice point
+     * @return the {@link Page} result
+     */
+    Query<Page<U>> toPage(SlicePoint slicePoint);
+
+
+    /**
+     * Get the {@link Page} result, with the count cached in the given {@link CountCache} for each bound values.
+     * @param slicePoint the slice point
+     * @param cache the {@link CountCache}
+     * @return the {@link Page} result
+     */
+    Query<Page<U>> toPage(SlicePoint slicePoint, CountCache cache);
+
+
+    /**
+     * Create a {@link CompiledQuery} of the given query.
+     * @param source the source query
+     * @param cache the {@link CompiledQueryCache}
+     * @param <E> the type of entity of root
+     * @param <R> the type of root element
+     * @param <U> the type of query result
+     * @return a {@link CompiledQuery}
+     */
+    static <E, R extends RootAware<E>, U> CompiledQuery<E, R, U> of(
+            CreateQuery<E, R, U> source, CompiledQueryCache cache) {
+        return CompiledQuery.of(Objects.requireNonNull(source), Objects.requireNonNull(cache), Map.of());
+    }
+
+
+    private static <E, R extends RootAware<E>, U> CompiledQuery<E, R, U> of(
+            CreateQuery<E, R, U> source, CompiledQueryCache cache, Map<String, Object> params) {
+
+        return new CompiledQuery<>() {
+
+            @Override
+            public CompiledQuery<E, R, U> bind(String name, Object value) {
+                var map = new HashMap<>(params);
+                map.put(Objects.requireNonNull(name), value);
+                return CompiledQuery.of(source, cache, Map.copyOf(map));
+            }
+
+            @Override
+            public Query<Long> count() {
+                return em -> bound(countQuery(em, source.hints())).getSingleResult();
+            }
+
+            @Override
+            public Query<Long> count(CountCache countCache) {
+                Class<E> rootClass = source.rootSource().rootClass();
+                return em -> countCache.count(em,
+                    Fingerprint.of("count", rootClass, source.rootSource(), source.filter(), boundValues()),
+                    () -> QueryBuilder.entityTypes(em.getCriteriaBuilder(), source.rootSource(), source.filter()),
+                    () -> CountStrategy.Count.exact(count().on(em))).value();
+            }
+
+            @Override
+            public Query<Optional<U>> toOptional() {
+                return em -> Optional.ofNullable(bound(singleQuery(em)).getSingleResult());
+            }
+
+            @Override
+            public Query<U> toSingle() {
+                return em -> bound(singleQuery(em)).getSingleResult();
+            }
+
+            @Override
+            public Query<List<U>> toList() {
+                return em -> bound(listQuery(em)).getResultList();
+            }
+
+            @Override
+            public Query<Slice<U>> toSlice(SlicePoint slicePoint) {
+                return em -> QueryBuilder.slice(bound(listQuery(em)), slicePoint);
+            }
+
+            @Override
+            public Query<Page<U>> toPage(SlicePoint slicePoint) {
+                return em -> QueryBuilder.page(bound(listQuery(em)),
+                    () -> bound(countQuery(em, Hints.empty())).getSingleResult(), slicePoint);
+            }
+
+            @Override
+            public Query<Page<U>> toPage(SlicePoint slicePoint, CountCache countCache) {
+                return em -> QueryBuilder.page(bound(listQuery(em)), () -> count(countCache).on(em), slicePoint);
+            }
+
+            private TypedQuery<Long> countQuery(EntityManager em, Hints hints) {
+                long start = System.nanoTime();
+                return traced(start, cache.query(em,
+                    Fingerprint.of("count", source.rootSource().rootClass(), source.rootSource(), source.filter(), hints),
+                    e -> QueryBuilder.countCriteriaQuery(e.getCriteriaBuilder(), source.rootSource(), source.filter()),
+                    hints), true);
+            }
+
+            private TypedQuery<U> singleQuery(EntityManager em) {
+                long start = System.nanoTime();
+                return traced(start, cache.query(em,
+                    Fingerprint.of("single", source.rootSource().rootClass(), source.rootSource(),
+                        source.mapper(), source.filter(), source.hints()),
+                    e -> criteriaQuery(e, Sorts.empty()),
+                    source.hints()), false);
+            }
+
+            private TypedQuery<U> listQuery(EntityManager em) {
+                long start = System.nanoTime();
+                return traced(start, cache.query(em,
+                    Fingerprint.of("list", source.rootSource().rootClass(), source.rootSource(),
+                        source.mapper(), source.filter(), source.sorts(), source.hints()),
+                    e -> criteriaQuery(e, source.sorts()),
+                    source.hints()), false);
+            }
+
+            private CriteriaQuery<U> criteriaQuery(EntityManager em, Sorts<E, R> sorts) {
+                // the compiled query has no chance to load the collections of the results
+                FetchMapper.rejectCollections(source.rootSource(), source.mapper(), em.getCriteriaBuilder());
+                return QueryBuilder.criteriaQuery(em.getCriteriaBuilder(), source.rootSource(),
+                    source.mapper(), source.filter(), sorts);
+            }
+
+            private <T> TypedQuery<T> traced(long start, TypedQuery<T> query, boolean count) {
+                // the build is included in the translate, as it occurs only on a cache miss
+                return QueryTrace.traced(query, source.rootSource().rootClass(), 0, System.nanoTime() - start, count,
+                    source.rootSource(), source.mapper(), source.filter(), source.sorts());
+            }
+
+            private List<List<Object>> boundValues() {
+                return params.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .map(e -> List.of(e.getKey(), e.getValue()))
+                    .toList();
+            }
+
+            private <T> TypedQuery<T> bound(TypedQuery<T> query) {
+                for (Parameter<?> parameter : query.getParameters()) {
+                    String name = parameter.getName();
+                    if (Objects.nonNull(name) && params.containsKey(name)) {
+                        query.setParameter(name, params.get(name));
+                    }
+                }
+                return query;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaQuery;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The bounded LRU cache of compiled queries.
+ * <p>
+ * A compiled query is registered to the {@link EntityManagerFactory} as a named query,
+ * so the persistence provider translates the criteria query only once.
+ * Subsequent executions create the query from the named query and only bind parameters.
+ * <p>
+ * The criteria query is translated and registered outside the lock of this cache, and then published,
+ * so the translation does not block the other queries. The name of an evicted entry is reused
+ * by replacing its named query, and the entries refer to the {@link EntityManagerFactory} weakly.
+ * @author Naotsugu Kobayashi
+ */
+public class CompiledQueryCache {
+
+    /** The default capacity. */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /** The sequence of cache instance. */
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    /** The shared cache. */
+    private static final CompiledQueryCache SHARED = new CompiledQueryCache(DEFAULT_CAPACITY);
+
+    /** The maximum number of entries. */
+    private final int capacity;
+
+    /** The prefix of the named query name. */
+    private final String prefix;
+
+    /** The entries in access order. */
+    private final LinkedHashMap<CacheKey, Entry> entries;
+
+    /** The names released by eviction. */
+    private final Deque<String> freeNames = new ArrayDeque<>();
+
+    /** The hit count. */
+    private final LongAdder hits = new LongAdder();
+
+    /** The miss count. */
+    private final LongAdder misses = new LongAdder();
+
+    /** The number of names issued. */
+    private int issued;
+
+
+    private CompiledQueryCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive. " + capacity);
+        }
+        this.capacity = capacity;
+        this.prefix = CompiledQueryCache.class.getName() + "." + SEQUENCE.incrementAndGet() + ".";
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                if (size() > CompiledQueryCache.this.capacity) {
+                    freeNames.push(eldest.getValue().name());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Get the shared {@link CompiledQueryCache}.
+     * @return the shared {@link CompiledQueryCache}
+     */
+    public static CompiledQueryCache shared() {
+        return SHARED;
+    }
+
+
+    /**
+     * Create a new {@link CompiledQueryCache}.
+     * @param capacity the maximum number of compiled queries
+     * @return a new {@link CompiledQueryCache}
+     */
+    public static CompiledQueryCache of(int capacity) {
+        return new CompiledQueryCache(capacity);
+    }
+
+
+    /**
+     * Create the query from the compiled query.
+     * @param em the {@link EntityManager}
+     * @param fingerprint the fingerprint of the query
+     * @param compiler the function to create the criteria query
+     * @param hints the hints to be applied to the query
+     * @param <U> the type of query result
+     * @return the query
+     */
+    <U> TypedQuery<U> query(EntityManager em, Fingerprint fingerprint,
+            Function<EntityManager, CriteriaQuery<U>> compiler, Hints hints) {
+
+        if (!fingerprint.isCacheable()) {
+            misses.increment();
+            TypedQuery<U> query = em.createQuery(compiler.apply(em));
+            hints.apply(query);
+            return query;
+        }
+
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        var key = CacheKey.of(emf, fingerprint);
+        synchronized (entries) {
+            // the named query is created in the lock, since the name is reused after the eviction
+            TypedQuery<U> query = named(em, entries.get(key));
+            if (Objects.nonNull(query)) {
+                hits.increment();
+                return query;
+            }
+        }
+
+        misses.increment();
+        CriteriaQuery<U> cq = compiler.apply(em);
+        TypedQuery<U> compiled = em.createQuery(cq);
+        hints.apply(compiled);
+        String name;
+        synchronized (entries) {
+            name = freeNames.isEmpty() ? prefix + (issued++) : freeNames.pop();
+        }
+        // the name is neither in the entries nor free until published, so no other thread refers to it
+        emf.addNamedQuery(name, compiled);
+        TypedQuery<U> query = em.createNamedQuery(name, cq.getResultType());
+
+        synchronized (entries) {
+            if (Objects.isNull(entries.putIfAbsent(key, new Entry(name, cq.getResultType())))) {
+                return query;
+            }
+            // published by another thread in the meantime
+            freeNames.push(name);
+            TypedQuery<U> published = named(em, entries.get(key));
+            return Objects.nonNull(published) ? published : query;
+        }
+    }
+
+
+    private static <U> TypedQuery<U> named(EntityManager em, Entry entry) {
+        if (Objects.isNull(entry)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Class<U> resultType = (Class<U>) entry.resultType();
+        return em.createNamedQuery(entry.name(), resultType);
+    }
+
+
+    /**
+     * Get the number of cache hits.
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+
+    /**
+     * Get the number of cache misses.
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Get the number of compiled queries in this cache.
+     * @return the number of compiled queries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+
+    /**
+     * Get the maximum number of compiled queries.
+     * @return the maximum number of compiled queries
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Discard all compiled queries.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.values().forEach(entry -> freeNames.push(entry.name()));
+            entries.clear();
+        }
+    }
+
+
+    /**
+     * The cache entry.
+     * @param name the name of the named query
+     * @param resultType the result type of the query
+     */
+    private record Entry(String name, Class<?> resultType) { }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The policy for the persistence context applied on a page-by-page of the {@link SliceStream}.
+ * <p>
+ * The policy is applied before reading the next page, after all elements of the previous page are consumed.
+ * @author Naotsugu Kobayashi
+ */
+public enum ContextPolicy {
+
+    /** Keep all read entities managed. */
+    RETAIN {
+        @Override
+        void apply(EntityManager em, List<?> page) { }
+    },
+
+    /**
+     * Clear the persistence context.
+     * Note that entities other than the stream results are also detached,
+     * and changes that have not been flushed are discarded.
+     */
+    CLEAR {
+        @Override
+        void apply(EntityManager em, List<?> page) {
+            em.clear();
+        }
+    },
+
+    /**
+     * Detach the entities of the previous page.
+     * The associations mapped with {@code CascadeType.DETACH} are also detached.
+     */
+    DETACH {
+        @Override
+        void apply(EntityManager em, List<?> page) {
+            for (Object e : page) {
+                if (isEntity(e)) {
+                    em.detach(e);
+                }
+            }
+        }
+    },
+
+    /** Flush the changes and clear the persistence context. */
+    FLUSH_AND_CLEAR {
+        @Override
+        void apply(EntityManager em, List<?> page) {
+            em.flush();
+            em.clear();
+        }
+    };
+
+
+    /**
+     * Apply this policy.
+     * @param em the {@link EntityManager}
+     * @param page the elements of the previous page
+     */
+    abstract void apply(EntityManager em, List<?> page);
+
+
+    private static boolean isEntity(Object obj) {
+        if (Objects.isNull(obj)) {
+            return false;
+        }
+        for (Class<?> c = obj.getClass(); c != null; c = c.getSuperclass()) {
+            if (c.isAnnotationPresent(Entity.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
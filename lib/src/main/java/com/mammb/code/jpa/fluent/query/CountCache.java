@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManager;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The bounded cache of the count of {@link Page}, with time to live.
+ * <p>
+ * The count is keyed by the root class, the filter including its captured values and bound parameters,
+ * and the count strategy, so page 2..N of the same filtered result reuse the count of page 1.
+ * <p>
+ * The count is reused until any entity type the count query touches, including the joins and the subqueries,
+ * is invalidated by {@link CacheInvalidator#invalidate(EntityManager, Class)}.
+ * The counts refer to the {@link jakarta.persistence.EntityManagerFactory} weakly, so a closed factory is not kept reachable.
+ * @author Naotsugu Kobayashi
+ */
+public class CountCache {
+
+    /** The maximum number of entries. */
+    private final int capacity;
+
+    /** The time to live in nanoseconds. */
+    private final long ttlNanos;
+
+    /** The clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** The entries in access order. */
+    private final LinkedHashMap<CacheKey, Entry> entries;
+
+    /** The hit count. */
+    private final LongAdder hits = new LongAdder();
+
+    /** The miss count. */
+    private final LongAdder misses = new LongAdder();
+
+
+    private CountCache(int capacity, Duration ttl, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive. " + capacity);
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive. " + ttl);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = Objects.requireNonNull(clock);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                return size() > CountCache.this.capacity;
+            }
+        };
+    }
+
+
+    /**
+     * Create a new {@link CountCache}.
+     * @param capacity the maximum number of counts
+     * @param ttl the time to live of count
+     * @return a new {@link CountCache}
+     */
+    public static CountCache of(int capacity, Duration ttl) {
+        return new CountCache(capacity, ttl, System::nanoTime);
+    }
+
+
+    /**
+     * Create a new {@link CountCache} with the given clock.
+     * @param capacity the maximum number of counts
+     * @param ttl the time to live of count
+     * @param clock the clock in nanoseconds
+     * @return a new {@link CountCache}
+     */
+    static CountCache of(int capacity, Duration ttl, LongSupplier clock) {
+        return new CountCache(capacity, ttl, clock);
+    }
+
+
+    /**
+     * Get the count from this cache, or load and cache it.
+     * @param em the {@link EntityManager}
+     * @param fingerprint the fingerprint of the count
+     * @param entities the supplier of the entity types the count query touches
+     * @param loader the loader of the count
+     * @return the count
+     */
+    CountStrategy.Count count(EntityManager em, Fingerprint fingerprint, Supplier<Set<Class<?>>> entities,
+            Supplier<CountStrategy.Count> loader) {
+
+        if (!fingerprint.isCacheable()) {
+            misses.increment();
+            return loader.get();
+        }
+
+        var key = CacheKey.of(em.getEntityManagerFactory(), fingerprint);
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (Objects.nonNull(entry) && now - entry.expiresAt() < 0 && CacheInvalidator.isCurrent(entry.generations())) {
+                hits.increment();
+                return entry.count();
+            }
+        }
+        misses.increment();
+        // the generations are taken before the execution, so a concurrent write makes the count stale
+        Map<Class<?>, Long> generations = CacheInvalidator.generations(em.getMetamodel(), entities.get());
+        CountStrategy.Count count = loader.get();
+        synchronized (entries) {
+            entries.put(key, new Entry(count, generations, now + ttlNanos));
+        }
+        return count;
+    }
+
+
+    /**
+     * Get the number of cache hits.
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+
+    /**
+     * Get the number of cache misses.
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Get the number of counts in this cache, including expired ones.
+     * @return the number of counts
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+
+    /**
+     * Discard all counts.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+
+    /**
+     * The cache entry.
+     * @param count the count
+     * @param generations the generations of the entity types touched when the count is loaded
+     * @param expiresAt the expiration time in nanoseconds
+     */
+    private record Entry(CountStrategy.Count count, Map<Class<?>, Long> generations, long expiresAt) { }
+
+}
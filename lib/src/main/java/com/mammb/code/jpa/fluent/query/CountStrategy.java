@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.core.RootSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Subquery;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The strategy to count the total amount of elements of the {@link Page}.
+ * @author Naotsugu Kobayashi
+ */
+public interface CountStrategy {
+
+    /**
+     * Count the total amount of elements.
+     * @param em {@link EntityManager}
+     * @param rootSource {@link RootSource}
+     * @param filter {@link Filter}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return the {@link Count}
+     */
+    <E, R extends RootAware<E>> Count count(EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter);
+
+
+    /**
+     * Get the {@link CountStrategy} which caches the count of this strategy in the given {@link CountCache}.
+     * @param cache the {@link CountCache}
+     * @return the {@link CountStrategy}
+     */
+    default CountStrategy cached(CountCache cache) {
+        Objects.requireNonNull(cache);
+        CountStrategy delegate = this;
+        return new CountStrategy() {
+            @Override
+            public <E, R extends RootAware<E>> Count count(
+                    EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter) {
+                return cache.count(em, Fingerprint.of("count", delegate, rootSource.rootClass(), rootSource, filter),
+                    () -> QueryBuilder.entityTypes(em.getCriteriaBuilder(), rootSource, filter),
+                    () -> delegate.count(em, rootSource, filter));
+            }
+        };
+    }
+
+
+    /**
+     * Get the {@link CountStrategy} which counts exactly by {@code COUNT} query.
+     * @return the {@link CountStrategy}
+     */
+    static CountStrategy exact() {
+        return new CountStrategy() {
+            @Override
+            public <E, R extends RootAware<E>> Count count(
+                    EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter) {
+                return Count.exact(QueryBuilder.countQuery(em, rootSource, filter, Hints.empty()).getSingleResult());
+            }
+        };
+    }
+
+
+    /**
+     * Get the {@link CountStrategy} which counts up to the given cap.
+     * The rows are counted by {@code SELECT COUNT(*) FROM (SELECT id ... LIMIT cap + 1)},
+     * so the database can stop scanning at the cap.
+     * If the provider does not support the subquery in the {@code FROM} clause, e.g. EclipseLink,
+     * or the entity has a composite id, the ids are read up to {@code cap + 1} rows instead,
+     * so up to {@code cap + 1} rows are transferred to the client.
+     * If there are more than {@code cap} elements, the count is not exact and its value is {@code cap}.
+     * @param cap the cap of count
+     * @return the {@link CountStrategy}
+     */
+    static CountStrategy capped(long cap) {
+        if (cap <= 0 || cap >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("cap must be positive int. " + cap);
+        }
+        return new CountStrategy() {
+            @Override
+            public <E, R extends RootAware<E>> Count count(
+                    EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter) {
+                long start = System.nanoTime();
+                int limit = Math.toIntExact(cap + 1);
+                Optional<CriteriaQuery<Long>> counting = cappedCriteriaQuery(em, rootSource, filter, limit);
+                long size;
+                if (counting.isPresent()) {
+                    size = QueryTrace.createQuery(em, counting.get(), start, true, rootSource, filter)
+                        .getSingleResult();
+                } else {
+                    TypedQuery<?> query = QueryTrace.createQuery(em, idCriteriaQuery(em, rootSource, filter),
+                        start, true, rootSource, filter);
+                    size = query.setMaxResults(limit).getResultList().size();
+                }
+                return size > cap ? Count.lowerBound(cap) : Count.exact(size);
+            }
+        };
+    }
+
+
+    private static <E, R extends RootAware<E>> Optional<CriteriaQuery<Long>> cappedCriteriaQuery(
+            EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter, int limit) {
+        EntityType<E> entityType = em.getMetamodel().entity(rootSource.rootClass());
+        if (!entityType.hasSingleIdAttribute()) {
+            return Optional.empty();
+        }
+        String idName = entityType.getSingularAttributes().stream()
+            .filter(SingularAttribute::isId).findFirst().orElseThrow().getName();
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        try (var scope = QueryContext.open(cb)) {
+            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+            // the subqueries of the filter are created on the limited subquery
+            Subquery<Object> sq = scope.put(cq.subquery(Object.class));
+            R root = rootSource.root(scope.put(sq.from(rootSource.rootClass())), sq, cb);
+            Path<Object> id = root.get().get(idName);
+            // the column of a derived table must have the alias
+            id.alias(idName);
+            sq.select(id);
+            Optional.ofNullable(filter.apply(root)).ifPresent(sq::where);
+            return Provider.of(em).derivedRoot(cq, sq, limit)
+                .map(derived -> cq.select(cb.count(derived.get(idName))));
+        }
+    }
+
+
+    private static <E, R extends RootAware<E>> CriteriaQuery<Object> idCriteriaQuery(
+            EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        try (var scope = QueryContext.open(cb)) {
+            CriteriaQuery<Object> cq = scope.put(cb.createQuery(Object.class));
+            R root = rootSource.root(scope.put(cq.from(rootSource.rootClass())), cq, cb);
+            EntityType<E> entityType = em.getMetamodel().entity(rootSource.rootClass());
+            Optional<? extends SingularAttribute<? super E, ?>> id = entityType.hasSingleIdAttribute()
+                ? entityType.getSingularAttributes().stream().filter(SingularAttribute::isId).findFirst()
+                : Optional.empty();
+            cq.select(id.isPresent() ? root.get().get(id.get().getName()) : root.get());
+            Optional.ofNullable(filter.apply(root)).ifPresent(cq::where);
+            cq.orderBy(List.of());
+            return cq;
+        }
+    }
+
+
+    /**
+     * The count.
+     * @param value the value of count
+     * @param exact whether the value is exact. If {@code false}, the actual count is more than the value
+     */
+    record Count(long value, boolean exact) {
+
+        /**
+         * Create the exact {@link Count}.
+         * @param value the value of count
+         * @return the {@link Count}
+         */
+        public static Count exact(long value) {
+            return new Count(value, true);
+        }
+
+
+        /**
+         * Create the {@link Count} that the actual count is more than the given value.
+         * @param value the value of count
+         * @return the {@link Count}
+         */
+        public static Count lowerBound(long value) {
+            return new Count(value, false);
+        }
+    }
+
+}
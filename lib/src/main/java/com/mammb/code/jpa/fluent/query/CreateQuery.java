@@ -17,8 +17,11 @@ package com.mammb.code.jpa.fluent.query;
 
 import com.mammb.code.jpa.fluent.core.RootAware;
 import com.mammb.code.jpa.fluent.core.RootSource;
+import jakarta.persistence.criteria.CriteriaQuery;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
 /**
@@ -65,6 +68,55 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
     Hints hints();
 
 
+    /**
+     * Compile this query with the shared {@link CompiledQueryCache}.
+     * @return the {@link CompiledQuery}
+     */
+    default CompiledQuery<E, R, U> compile() {
+        return compile(CompiledQueryCache.shared());
+    }
+
+
+    /**
+     * Compile this query with the given {@link CompiledQueryCache}.
+     * @param cache the {@link CompiledQueryCache}
+     * @return the {@link CompiledQuery}
+     */
+    default CompiledQuery<E, R, U> compile(CompiledQueryCache cache) {
+        return CompiledQuery.of(this, cache);
+    }
+
+
+    /**
+     * Get the criteria query built from this query, e.g. to inspect whether distinct is applied.
+     * @return the criteria query
+     */
+    default Query<CriteriaQuery<U>> toCriteriaQuery() {
+        return em -> QueryBuilder.criteriaQuery(em.getCriteriaBuilder(), rootSource(), mapper(), filter(), sorts());
+    }
+
+
+    /**
+     * Cache the results of this query in the shared {@link ResultCache}.
+     * @param ttl the time to live of result
+     * @return the {@link CachedQuery}
+     */
+    default CachedQuery<E, R, U> cached(Duration ttl) {
+        return cached(ttl, ResultCache.shared());
+    }
+
+
+    /**
+     * Cache the results of this query in the given {@link ResultCache}.
+     * @param ttl the time to live of result
+     * @param cache the {@link ResultCache}
+     * @return the {@link CachedQuery}
+     */
+    default CachedQuery<E, R, U> cached(Duration ttl, ResultCache cache) {
+        return CachedQuery.of(this, ttl, cache);
+    }
+
+
     /**
      * Get the count result.
      * @return the count result
@@ -86,6 +138,16 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
     }
 
 
+    /**
+     * Get the count result, cached in the given {@link CountCache}.
+     * @param cache the {@link CountCache}
+     * @return the count result
+     */
+    default Query<Long> count(CountCache cache) {
+        return em -> CountStrategy.exact().cached(cache).count(em, rootSource(), filter()).value();
+    }
+
+
     /**
      * Get the optional single result.
      * @return the optional single result
@@ -171,6 +233,29 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
     }
 
 
+    /**
+     * Get the {@link KeysetSlice} result.
+     * The slice is read by seeking to the keys of the previous slice instead of the offset.
+     * @param keysetPoint the keyset point
+     * @return the {@link KeysetSlice} result
+     */
+    default Query<KeysetSlice<U>> toSlice(KeysetPoint keysetPoint) {
+        return em -> QueryBuilder.slice(em, rootSource(), mapper(), filter(), sorts(), keysetPoint, hints());
+    }
+
+
+    /**
+     * Get the {@link KeysetSlice} result.
+     * The slice is read by seeking to the keys of the previous slice instead of the offset.
+     * @param request The seek request
+     * @return the {@link KeysetSlice} result
+     */
+    default Query<KeysetSlice<U>> toSlice(SeekRequest<E, R> request) {
+        return em -> QueryBuilder.slice(em, rootSource(), mapper(),
+            filter().and(request.getFilter()), sorts().ands(request.getSorts()), request.getKeysetPoint(), hints());
+    }
+
+
     /**
      * Get the {@link Page} result.
      * @param slicePoint the slice point
@@ -181,6 +266,24 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
     }
 
 
+    /**
+     * Get the {@link Page} result.
+     * The count query is executed concurrently on another {@link jakarta.persistence.EntityManager}
+     * created from the same factory, so the changes not committed are not counted.
+     * If the total is derived from the content, the count not yet started is skipped,
+     * but the count already started runs to the end.
+     * If the count is needed but not yet started by the executor, it is executed on the calling thread,
+     * so the page run on the same bounded executor, e.g. {@code onAsync(emf)}, does not wait for the executor
+     * occupied by the pages waiting for their counts.
+     * @param slicePoint the slice point
+     * @param executor the {@link Executor} to execute the count query
+     * @return the {@link Page} result
+     */
+    default Query<Page<U>> toPage(SlicePoint slicePoint, Executor executor) {
+        return em -> QueryBuilder.page(em, rootSource(), mapper(), filter(), sorts(), slicePoint, hints(), executor);
+    }
+
+
     /**
      * Get the {@link Page} result.
      * @param request The slice request
@@ -192,6 +295,29 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
     }
 
 
+    /**
+     * Get the {@link Page} result.
+     * @param slicePoint the slice point
+     * @param countStrategy the {@link CountStrategy} of the total amount of elements
+     * @return the {@link Page} result
+     */
+    default Query<Page<U>> toPage(SlicePoint slicePoint, CountStrategy countStrategy) {
+        return em -> QueryBuilder.page(em, rootSource(), mapper(), filter(), sorts(), slicePoint, hints(), countStrategy);
+    }
+
+
+    /**
+     * Get the {@link Page} result.
+     * @param request The slice request
+     * @param countStrategy the {@link CountStrategy} of the total amount of elements
+     * @return the {@link Page} result
+     */
+    default Query<Page<U>> toPage(SliceRequest<E, R> request, CountStrategy countStrategy) {
+        return em -> QueryBuilder.page(em, rootSource(), mapper(), filter().and(request.getFilter()),
+            sorts().ands(request.getSorts()), request.getSlicePoint(), hints(), countStrategy);
+    }
+
+
     /**
      * Get the {@link Stream} result.
      * This Stream reads records by page.
@@ -211,11 +337,27 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
      * @return the {@link Stream} result
      */
     default Query<Stream<U>> toStream(int pageSize) {
-        return em -> SliceStream.of(
-            QueryBuilder.countQuery(em, rootSource(), filter(), hints()),
-            QueryBuilder.query(em, rootSource(), mapper(), filter(), sorts(), hints()),
-            pageSize
-        ).stream();
+        return toStream(pageSize, ContextPolicy.RETAIN);
+    }
+
+
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by page.
+     * This {@link Stream} is descending order.
+     * @param pageSize The size of page
+     * @param policy The {@link ContextPolicy} applied on a page-by-page
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toStream(int pageSize, ContextPolicy policy) {
+        return em -> {
+            var sliceStream = SliceStream.of(
+                QueryBuilder.countQuery(em, rootSource(), filter(), hints()),
+                QueryBuilder.query(em, rootSource(), mapper(), filter(), sorts(), hints()),
+                pageSize);
+            sliceStream.addContextPolicy(em, policy);
+            return sliceStream.stream();
+        };
     }
 
 
@@ -234,6 +376,35 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
         ).stream();
     }
 
+    /**
+     * Get the parallel {@link Stream} result, which reads the ranges of the id attribute concurrently.
+     * @param partitions the number of partitions of the id range
+     * @return the parallel {@link Stream} result
+     * @see #toParallelStream(int, int)
+     */
+    default Query<Stream<U>> toParallelStream(int partitions) {
+        return toParallelStream(partitions, 100);
+    }
+
+
+    /**
+     * Get the parallel {@link Stream} result, which reads the ranges of the id attribute concurrently.
+     * <p>
+     * The range between the minimum and the maximum of the id is divided into the given number of partitions,
+     * and each partition is read by page on its own {@link jakarta.persistence.EntityManager},
+     * which is cleared page by page.
+     * The root entity must have a single integral id attribute.
+     * The stream is unordered across the partitions, and the entities in the stream are detached.
+     * The stream should be closed, to close the {@code EntityManager}s of the partitions not completely read.
+     * @param partitions the number of partitions of the id range
+     * @param pageSize the size of page
+     * @return the parallel {@link Stream} result
+     */
+    default Query<Stream<U>> toParallelStream(int partitions, int pageSize) {
+        return em -> PartitionSpliterator.stream(em, this, partitions, pageSize);
+    }
+
+
     /**
      * Get the {@link Stream} result.
      * This Stream reads records by page.
@@ -256,10 +427,28 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
      * @return the {@link Stream} result
      */
     default Query<Stream<U>> toForwardingStream(int pageSize) {
-        return em -> SliceStream.forwardOf(
-            QueryBuilder.query(em, rootSource(), mapper(), filter(), sorts(), hints()),
-            pageSize
-        ).stream();
+        return toForwardingStream(pageSize, ContextPolicy.RETAIN);
+    }
+
+
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by page.
+     * It is recommended that {@code toStream(int pageSize, ContextPolicy policy)} be used
+     * when updating a record that has already been read,
+     * since there is a possibility of missing processing.
+     * @param pageSize The size of page
+     * @param policy The {@link ContextPolicy} applied on a page-by-page
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toForwardingStream(int pageSize, ContextPolicy policy) {
+        return em -> {
+            var sliceStream = SliceStream.forwardOf(
+                QueryBuilder.query(em, rootSource(), mapper(), filter(), sorts(), hints()),
+                pageSize);
+            sliceStream.addContextPolicy(em, policy);
+            return sliceStream.stream();
+        };
     }
 
 
@@ -280,6 +469,86 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
     }
 
 
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by the cursor of a single query.
+     * The {@link Stream} should be closed to release the result set.
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toCursorStream() {
+        return toCursorStream(100);
+    }
+
+
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by the cursor of a single query.
+     * The {@link Stream} should be closed to release the result set.
+     * @param fetchSize The JDBC fetch size
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toCursorStream(int fetchSize) {
+        return em -> QueryBuilder.cursorStream(em,
+            QueryBuilder.query(em, rootSource(), mapper(), filter(), sorts(), hints()),
+            fetchSize);
+    }
+
+
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by page, seeking to the sort keys of the last element of the previous page.
+     * Neither count nor offset is used, so the cost per page is constant.
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toKeysetStream() {
+        return toKeysetStream(100);
+    }
+
+
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by page, seeking to the sort keys of the last element of the previous page.
+     * Neither count nor offset is used, so the cost per page is constant.
+     * @param pageSize The size of page
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toKeysetStream(int pageSize) {
+        return toKeysetStream(pageSize, ContextPolicy.RETAIN);
+    }
+
+
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by page, seeking to the sort keys of the last element of the previous page.
+     * Neither count nor offset is used, so the cost per page is constant.
+     * @param pageSize The size of page
+     * @param policy The {@link ContextPolicy} applied on a page-by-page
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toKeysetStream(int pageSize, ContextPolicy policy) {
+        return em -> {
+            var sliceStream = SliceStream.keysetOf(em, rootSource(), mapper(), filter(), sorts(), hints(),
+                KeysetPoint.of(pageSize));
+            sliceStream.addContextPolicy(em, policy);
+            return sliceStream.stream();
+        };
+    }
+
+
+    /**
+     * Get the {@link Stream} result.
+     * This Stream reads records by page, seeking to the sort keys of the last element of the previous page.
+     * Neither count nor offset is used, so the cost per page is constant.
+     * @param request The seek request
+     * @return the {@link Stream} result
+     */
+    default Query<Stream<U>> toKeysetStream(SeekRequest<E, R> request) {
+        return em -> SliceStream.keysetOf(em, rootSource(), mapper(),
+            filter().and(request.getFilter()), sorts().ands(request.getSorts()), hints(),
+            request.getKeysetPoint()).stream();
+    }
+
+
     /**
      * Get the {@link Stream} result.
      * This Stream reads records by page.
@@ -368,4 +637,42 @@ public interface CreateQuery<E, R extends RootAware<E>, U> {
         );
     }
 
+
+    /**
+     * Get the {@link Iterable} result.
+     * This Iterable reads records by page, seeking to the sort keys of the last element of the previous page.
+     * Neither count nor offset is used, so the cost per page is constant.
+     * @return the {@link Iterable} result
+     */
+    default Query<Iterable<U>> toKeysetIterable() {
+        return toKeysetIterable(100);
+    }
+
+
+    /**
+     * Get the {@link Iterable} result.
+     * This Iterable reads records by page, seeking to the sort keys of the last element of the previous page.
+     * Neither count nor offset is used, so the cost per page is constant.
+     * @param pageSize The size of page
+     * @return the {@link Iterable} result
+     */
+    default Query<Iterable<U>> toKeysetIterable(int pageSize) {
+        return em -> SliceStream.keysetOf(em, rootSource(), mapper(), filter(), sorts(), hints(),
+            KeysetPoint.of(pageSize));
+    }
+
+
+    /**
+     * Get the {@link Iterable} result.
+     * This Iterable reads records by page, seeking to the sort keys of the last element of the previous page.
+     * Neither count nor offset is used, so the cost per page is constant.
+     * @param request The seek request
+     * @return the {@link Iterable} result
+     */
+    default Query<Iterable<U>> toKeysetIterable(SeekRequest<E, R> request) {
+        return em -> SliceStream.keysetOf(em, rootSource(), mapper(),
+            filter().and(request.getFilter()), sorts().ands(request.getSorts()), hints(),
+            request.getKeysetPoint());
+    }
+
 }
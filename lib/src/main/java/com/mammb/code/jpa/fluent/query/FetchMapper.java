@@ -0,0 +1,331 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.Criteria;
+import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.core.RootSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.FetchParent;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.PluralAttribute;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * The {@link Mapper} which fetches the associations of the root entity.
+ * <p>
+ * The single-valued associations are fetched by the left fetch joins of the query.
+ * The collection-valued associations are not joined to the query, since the fetch join of a collection
+ * multiplies the rows and breaks the paging. They are loaded in a batch for all the results,
+ * by the batch fetch of the provider if supported, or else by the additional query for each association,
+ * like {@code select distinct e from Issue e left join fetch e.journals where e.id in :ids}.
+ * @param mapper the underlying mapper
+ * @param selectors the selectors of the association to fetch
+ * @param <E> the type of entity
+ * @param <R> the type of root
+ * @param <U> the type of result
+ * @author Naotsugu Kobayashi
+ */
+record FetchMapper<E, R extends RootAware<E>, U>(
+        Mapper<E, R, U> mapper,
+        List<Criteria.ExpressionSelector<E, R, ?>> selectors) implements Mapper<E, R, U> {
+
+    /** The number of ids per additional query. */
+    private static final int CHUNK_SIZE = 500;
+
+
+    /**
+     * Create the {@link FetchMapper} which adds the given selector to the given mapper.
+     * @param mapper the mapper
+     * @param selector the selector of the association to fetch
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result
+     * @return the {@link FetchMapper}
+     */
+    static <E, R extends RootAware<E>, U> FetchMapper<E, R, U> of(
+            Mapper<E, R, U> mapper, Criteria.ExpressionSelector<E, R, ?> selector) {
+        Objects.requireNonNull(selector);
+        if (mapper instanceof FetchMapper<E, R, U> fetchMapper) {
+            List<Criteria.ExpressionSelector<E, R, ?>> list = new ArrayList<>(fetchMapper.selectors());
+            list.add(selector);
+            return new FetchMapper<>(fetchMapper.mapper(), List.copyOf(list));
+        }
+        return new FetchMapper<>(mapper, List.of(selector));
+    }
+
+
+    /**
+     * Reject the collection-valued fetches of the given mapper,
+     * for the query which reads the results without loading them.
+     * @param rootSource the root source
+     * @param mapper the mapper
+     * @param builder the {@link CriteriaBuilder}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @throws UnsupportedOperationException if the mapper fetches any collection-valued association
+     */
+    static <E, R extends RootAware<E>> void rejectCollections(
+            RootSource<E, R> rootSource, Mapper<E, R, ?> mapper, CriteriaBuilder builder) {
+        if (mapper instanceof FetchMapper<E, R, ?> fetchMapper
+                && !collections(fetchMapper.associations(rootSource, builder)).isEmpty()) {
+            throw new UnsupportedOperationException("The fetch of collection is not supported by this query.");
+        }
+    }
+
+
+    /**
+     * Reject the given query, if it loads the collection-valued fetches after the results are read.
+     * @param query the query
+     * @throws UnsupportedOperationException if the query loads the collection-valued fetches
+     */
+    static void rejectCollections(TypedQuery<?> query) {
+        if (Proxy.isProxyClass(query.getClass()) && Proxy.getInvocationHandler(query) instanceof Loader) {
+            throw new UnsupportedOperationException("The fetch of collection is not supported by this query.");
+        }
+    }
+
+
+    @Override
+    public R apply(RootSource<E, R> rootSource, CriteriaBuilder builder) {
+        R root = mapper.apply(rootSource, builder);
+        if (isRootSelected(root.query(), root.get())) {
+            for (List<Attribute<?, ?>> attributes : associations(rootSource, builder)) {
+                if (attributes.stream().noneMatch(Attribute::isCollection)) {
+                    fetch(root.get(), attributes);
+                }
+            }
+        }
+        return root;
+    }
+
+
+    @Override
+    public Mapper<E, R, U> distinct(boolean distinct) {
+        return new FetchMapper<>(mapper.distinct(distinct), selectors);
+    }
+
+
+    @Override
+    public void complete(AbstractQuery<U> query) {
+        mapper.complete(query);
+    }
+
+
+    /**
+     * Wrap the given query to load the collection-valued associations of the results.
+     * If there is no collection-valued association to fetch, the query is returned as it is.
+     * @param em the {@link EntityManager}
+     * @param rootSource the root source
+     * @param cq the criteria query of the given query
+     * @param query the query
+     * @return the query
+     */
+    TypedQuery<U> wrap(EntityManager em, RootSource<E, R> rootSource, CriteriaQuery<U> cq, TypedQuery<U> query) {
+        if (cq.getRoots().size() != 1 || !isRootSelected(cq, cq.getRoots().iterator().next())) {
+            return query;
+        }
+        List<List<Attribute<?, ?>>> collections = collections(associations(rootSource, em.getCriteriaBuilder()));
+        if (collections.isEmpty()) {
+            return query;
+        }
+        EntityType<E> entityType = em.getMetamodel().entity(rootSource.rootClass());
+        if (!entityType.hasSingleIdAttribute()) {
+            throw new UnsupportedOperationException("The fetch of collection requires the single id attribute.");
+        }
+        boolean batched = Provider.of(em).batchFetch(query, collections.stream()
+            .map(attributes -> attributes.stream().map(Attribute::getName).collect(Collectors.joining(".")))
+            .toList());
+        @SuppressWarnings("unchecked")
+        TypedQuery<U> proxy = (TypedQuery<U>) Proxy.newProxyInstance(
+            TypedQuery.class.getClassLoader(),
+            new Class<?>[] { TypedQuery.class },
+            new Loader(query, em, entityType, collections, batched));
+        return proxy;
+    }
+
+
+    private static boolean isRootSelected(AbstractQuery<?> query, Root<?> root) {
+        return query instanceof CriteriaQuery<?> cq && cq.getSelection() == root;
+    }
+
+
+    private static List<List<Attribute<?, ?>>> collections(List<List<Attribute<?, ?>>> associations) {
+        return associations.stream()
+            .filter(attributes -> attributes.stream().anyMatch(Attribute::isCollection))
+            .toList();
+    }
+
+
+    /**
+     * Get the attributes of the association paths to fetch.
+     * The selectors are applied to the root of a separate criteria query, so the query is not affected by them.
+     */
+    private List<List<Attribute<?, ?>>> associations(RootSource<E, R> rootSource, CriteriaBuilder builder) {
+        CriteriaQuery<E> query = builder.createQuery(rootSource.rootClass());
+        Root<E> from = query.from(rootSource.rootClass());
+        R root = rootSource.root(from, query, builder);
+        List<List<Attribute<?, ?>>> list = new ArrayList<>();
+        for (Criteria.ExpressionSelector<E, R, ?> selector : selectors) {
+            Expression<?> path = selector.apply(root).get();
+            List<String> names = Provider.of(path).attributeNames(path);
+            if (names.isEmpty()) {
+                throw new IllegalArgumentException("The fetch must be a path of the association. " + path);
+            }
+            list.add(attributes(from.getModel(), names));
+        }
+        return list;
+    }
+
+
+    private static List<Attribute<?, ?>> attributes(ManagedType<?> type, List<String> names) {
+        List<Attribute<?, ?>> attributes = new ArrayList<>();
+        for (String name : names) {
+            Attribute<?, ?> attribute = type.getAttribute(name);
+            if (!attribute.isAssociation()) {
+                throw new IllegalArgumentException("The fetch must be a path of the association. " + name);
+            }
+            attributes.add(attribute);
+            Object next = (attribute instanceof PluralAttribute<?, ?, ?> plural)
+                ? plural.getElementType()
+                : ((SingularAttribute<?, ?>) attribute).getType();
+            if (next instanceof ManagedType<?> managedType) {
+                type = managedType;
+            }
+        }
+        return attributes;
+    }
+
+
+    private static void fetch(FetchParent<?, ?> parent, List<Attribute<?, ?>> attributes) {
+        FetchParent<?, ?> current = parent;
+        for (Attribute<?, ?> attribute : attributes) {
+            FetchParent<?, ?> existing = null;
+            for (Fetch<?, ?> fetch : current.getFetches()) {
+                if (fetch.getAttribute().getName().equals(attribute.getName())) {
+                    existing = fetch;
+                    break;
+                }
+            }
+            current = Objects.nonNull(existing) ? existing : current.fetch(attribute.getName(), JoinType.LEFT);
+        }
+    }
+
+
+    /**
+     * The invocation handler of the query, which loads the collection-valued associations of the results.
+     */
+    private static final class Loader implements InvocationHandler {
+
+        private final TypedQuery<?> target;
+        private final EntityManager em;
+        private final EntityType<?> entityType;
+        private final List<List<Attribute<?, ?>>> collections;
+        private final boolean batched;
+
+        Loader(TypedQuery<?> target, EntityManager em, EntityType<?> entityType,
+                List<List<Attribute<?, ?>>> collections, boolean batched) {
+            this.target = target;
+            this.em = em;
+            this.entityType = entityType;
+            this.collections = collections;
+            this.batched = batched;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("equals") && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("getResultStream")) {
+                throw new UnsupportedOperationException("The fetch of collection is not supported by the stream.");
+            }
+            Object ret;
+            try {
+                ret = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (ret == target) {
+                // keep the proxy on the method chain
+                return proxy;
+            }
+            if (method.getParameterCount() == 0) {
+                if (method.getName().equals("getResultList")) {
+                    load((List<?>) ret);
+                } else if (method.getName().equals("getSingleResult")) {
+                    load(Collections.singletonList(ret));
+                }
+            }
+            return ret;
+        }
+
+        private void load(List<?> results) {
+            if (!batched) {
+                query(results);
+            }
+            // the associations loaded in a batch are not the lazy loads of each entity
+            collections.forEach(attributes -> LazyLoadDetector.loaded(results, attributes.get(0).getName()));
+        }
+
+        private void query(List<?> results) {
+            Class<?> rootClass = entityType.getJavaType();
+            PersistenceUnitUtil util = em.getEntityManagerFactory().getPersistenceUnitUtil();
+            List<Object> ids = results.stream()
+                .filter(rootClass::isInstance)
+                .map(util::getIdentifier)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+            if (ids.isEmpty()) {
+                return;
+            }
+            String idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            for (List<Attribute<?, ?>> attributes : collections) {
+                for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+                    CriteriaQuery<?> cq = cb.createQuery(rootClass);
+                    Root<?> root = cq.from(rootClass);
+                    fetch(root, attributes);
+                    cq.distinct(true).where(root.get(idName).in(ids.subList(i, Math.min(i + CHUNK_SIZE, ids.size()))));
+                    // the results are the entities already read, so the query is not traced
+                    em.createQuery(cq).getResultList();
+                }
+            }
+        }
+    }
+
+}
@@ -18,8 +18,9 @@ package com.mammb.code.jpa.fluent.query;
 import com.mammb.code.jpa.fluent.core.RootAware;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.Predicate;
-import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -46,7 +47,7 @@ public interface Filter<E, R extends RootAware<E>> {
      * @return a {@link Filter}
      */
     default Filter<E, R> and(Filter<E, R> other) {
-        return Composition.composed(this, other, CriteriaBuilder::and);
+        return Composition.composed(this, other, Composition.Operator.AND);
     }
 
 
@@ -56,7 +57,7 @@ public interface Filter<E, R extends RootAware<E>> {
      * @return a {@link Filter}
      */
     default Filter<E, R> or(Filter<E, R> other) {
-        return Composition.composed(this, other, CriteriaBuilder::or);
+        return Composition.composed(this, other, Composition.Operator.OR);
     }
 
 
@@ -79,37 +80,68 @@ public interface Filter<E, R extends RootAware<E>> {
      * @return a empty {@link Filter}
      */
     static <E, R extends RootAware<E>> Filter<E, R> empty() {
-        return root -> null;
+        return new Composition.Composite<>(Composition.Operator.AND, List.of());
     }
 
 
     /**
      * The {@link Filter} composition helper.
+     * The filters composed by the same operator are flattened into a single n-ary node,
+     * which creates a single predicate without the recursion.
      */
     class Composition {
 
-        interface Combiner extends Serializable {
-            Predicate combine(CriteriaBuilder builder, Predicate lhs, Predicate rhs);
-        }
+        /** The operator of composition. */
+        enum Operator { AND, OR }
 
         private Composition() { }
 
         static <E, R extends RootAware<E>> Filter<E, R> composed(
-            Filter<E, R> lhs, Filter<E, R> rhs, Combiner combiner) {
+            Filter<E, R> lhs, Filter<E, R> rhs, Operator operator) {
 
-            return root -> {
+            List<Filter<E, R>> operands = new ArrayList<>();
+            addOperands(operands, lhs, operator);
+            addOperands(operands, rhs, operator);
+            return new Composite<>(operator, List.copyOf(operands));
+        }
 
-                Predicate that  = Objects.isNull(lhs) ? null : lhs.apply(root);
-                Predicate other = Objects.isNull(rhs) ? null : rhs.apply(root);
+        private static <E, R extends RootAware<E>> void addOperands(
+                List<Filter<E, R>> operands, Filter<E, R> filter, Operator operator) {
+            if (filter instanceof Composite<E, R> composite
+                    && (composite.operator() == operator || composite.operands().isEmpty())) {
+                operands.addAll(composite.operands());
+            } else if (Objects.nonNull(filter)) {
+                operands.add(filter);
+            }
+        }
 
-                if (Objects.isNull(that)) {
-                    return other;
+        /**
+         * The n-ary composite of {@link Filter}.
+         * The null predicates of the operands are ignored.
+         * @param operator the operator
+         * @param operands the operands
+         * @param <E> the type of entity
+         * @param <R> the type of root
+         */
+        record Composite<E, R extends RootAware<E>>(Operator operator, List<Filter<E, R>> operands)
+                implements Filter<E, R> {
+            @Override
+            public Predicate apply(R root) {
+                Predicate[] predicates = new Predicate[operands.size()];
+                int size = 0;
+                for (Filter<E, R> operand : operands) {
+                    Predicate predicate = operand.apply(root);
+                    if (Objects.nonNull(predicate)) {
+                        predicates[size++] = predicate;
+                    }
                 }
-
-                return Objects.isNull(other)
-                    ? that
-                    : combiner.combine(root.builder(), that, other);
-            };
+                if (size <= 1) {
+                    return size == 0 ? null : predicates[0];
+                }
+                Predicate[] args = (size == predicates.length) ? predicates : Arrays.copyOf(predicates, size);
+                CriteriaBuilder cb = root.builder();
+                return operator == Operator.AND ? cb.and(args) : cb.or(args);
+            }
         }
     }
 
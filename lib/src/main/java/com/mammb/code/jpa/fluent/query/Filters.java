@@ -16,6 +16,7 @@
 package com.mammb.code.jpa.fluent.query;
 
 import com.mammb.code.jpa.fluent.core.RootAware;
+import jakarta.persistence.criteria.ParameterExpression;
 import jakarta.persistence.criteria.Predicate;
 import java.util.Arrays;
 
@@ -82,4 +83,17 @@ public interface Filters {
         return Arrays.stream(filters).reduce(filter1, Filter::or);
     }
 
+
+    /**
+     * Create a named parameter expression.
+     * The value is bound by {@link CompiledQuery#bind(String, Object)}.
+     * @param paramClass the type of parameter
+     * @param name the name of parameter
+     * @param <T> the type of parameter
+     * @return the {@link ParameterExpression}
+     */
+    static <T> ParameterExpression<T> param(Class<T> paramClass, String name) {
+        return QueryContext.builder().parameter(paramClass, name);
+    }
+
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The structural fingerprint of query components.
+ * <p>
+ * Lambdas, anonymous classes and records are compared by their class and
+ * their captured values, so two {@link Querying} built by the same code with
+ * the same values have the same fingerprint.
+ * If a component captures a value whose immutability is unknown,
+ * the fingerprint is marked as not cacheable.
+ * <p>
+ * The captured values are read by reflection, so the package declaring the components must be
+ * open to the module {@code jpa.fluent.query}. Otherwise the fingerprint is not cacheable,
+ * and a warning is logged once per package.
+ * @author Naotsugu Kobayashi
+ */
+final class Fingerprint {
+
+    /** The logger. */
+    private static final System.Logger log = System.getLogger(Fingerprint.class.getName());
+
+    /** The packages reported as not open. */
+    private static final Set<String> REPORTED = ConcurrentHashMap.newKeySet();
+
+    /** The maximum depth of the component graph. */
+    private static final int MAX_DEPTH = 32;
+
+    /** The immutable value types. */
+    private static final Set<Class<?>> VALUE_TYPES = Set.of(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class,
+        Integer.class, Long.class, Float.class, Double.class,
+        BigDecimal.class, BigInteger.class, UUID.class);
+
+    /** The null token. */
+    private static final Object NULL = new Object();
+
+    /** The tokens of structure. */
+    private final List<Object> tokens;
+
+    /** Whether this fingerprint can be used as a cache key. */
+    private final boolean cacheable;
+
+    /** The hash code. */
+    private final int hash;
+
+
+    private Fingerprint(List<Object> tokens, boolean cacheable) {
+        this.tokens = Collections.unmodifiableList(tokens);
+        this.cacheable = cacheable;
+        this.hash = tokens.hashCode();
+    }
+
+
+    /**
+     * Create the {@link Fingerprint} of the given components.
+     * @param components the query components
+     * @return the {@link Fingerprint}
+     */
+    static Fingerprint of(Object... components) {
+        var walker = new Walker();
+        for (Object component : components) {
+            walker.walk(component, 0);
+        }
+        return new Fingerprint(walker.tokens, walker.cacheable);
+    }
+
+
+    /**
+     * Get whether this fingerprint can be used as a cache key.
+     * @return {@code true} if this fingerprint can be used as a cache key
+     */
+    boolean isCacheable() {
+        return cacheable;
+    }
+
+
+    /**
+     * Get the shape of this fingerprint.
+     * The shape identifies the classes of the components, such as the lambdas of the filter and the mapper,
+     * ignoring their captured values, so the same query built with different values has the same shape.
+     * @return the hex string of the shape
+     */
+    String shape() {
+        int h = 1;
+        for (Object token : tokens) {
+            if (token instanceof Class<?> c) {
+                h = 31 * h + c.getName().hashCode();
+            }
+        }
+        return String.format("%08x", h);
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Fingerprint that = (Fingerprint) o;
+        return hash == that.hash && cacheable == that.cacheable && tokens.equals(that.tokens);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    /**
+     * The walker of the component graph.
+     */
+    private static class Walker {
+
+        private final List<Object> tokens = new ArrayList<>();
+        private final Set<Object> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean cacheable = true;
+
+        void walk(Object obj, int depth) {
+
+            if (Objects.isNull(obj)) {
+                tokens.add(NULL);
+                return;
+            }
+
+            Class<?> type = obj.getClass();
+            if (VALUE_TYPES.contains(type) || obj instanceof Enum<?> || obj instanceof Class<?>
+                    || type.getPackageName().equals("java.time")) {
+                tokens.add(obj);
+                return;
+            }
+
+            if (depth > MAX_DEPTH || !visiting.add(obj)) {
+                unknown(obj);
+                return;
+            }
+
+            try {
+                if (obj instanceof List<?> list) {
+                    tokens.add(List.class);
+                    tokens.add(list.size());
+                    list.forEach(e -> walk(e, depth + 1));
+                } else if (type.isArray() && !type.getComponentType().isPrimitive()) {
+                    Object[] array = (Object[]) obj;
+                    tokens.add(type);
+                    tokens.add(array.length);
+                    for (Object e : array) walk(e, depth + 1);
+                } else if (type.isRecord()) {
+                    tokens.add(type);
+                    for (RecordComponent component : type.getRecordComponents()) {
+                        walk(component.getAccessor().invoke(obj), depth + 1);
+                    }
+                } else if (type.isSynthetic() || type.isAnonymousClass() || type.isLocalClass()) {
+                    // lambdas and anonymous classes are identified by their captured values
+                    tokens.add(type);
+                    for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                        for (Field field : c.getDeclaredFields()) {
+                            if (Modifier.isStatic(field.getModifiers())) continue;
+                            if (!field.trySetAccessible()) {
+                                inaccessible(obj);
+                                return;
+                            }
+                            walk(field.get(obj), depth + 1);
+                        }
+                    }
+                } else {
+                    unknown(obj);
+                }
+            } catch (IllegalAccessException e) {
+                inaccessible(obj);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                unknown(obj);
+            } finally {
+                visiting.remove(obj);
+            }
+        }
+
+        private void inaccessible(Object obj) {
+            Class<?> type = obj.getClass();
+            if (REPORTED.add(type.getPackageName())) {
+                log.log(System.Logger.Level.WARNING, "The captured values of {0} are not readable, so the query is not cached. " +
+                    "Open the package {1} of {2} to {3}.",
+                    type.getName(), type.getPackageName(), type.getModule(), Fingerprint.class.getModule());
+            }
+            unknown(obj);
+        }
+
+
+        private void unknown(Object obj) {
+            cacheable = false;
+            tokens.add(obj.getClass());
+        }
+    }
+
+}
@@ -37,13 +37,14 @@ public interface Grouping<E, R extends RootAware<E>> {
 
 
     /**
-     * Get the empty {@link Grouping}.
+     * Get the empty {@link Grouping}, which applies the empty list of expressions.
+     * The null is not applied, since some providers reject the null list of {@code groupBy}.
      * @param <E> the type of entity
      * @param <R> the type of root
      * @return a empty {@link Grouping}
      */
     static <E, R extends RootAware<E>> Grouping<E, R> empty() {
-        return root -> null;
+        return root -> List.of();
     }
 
 
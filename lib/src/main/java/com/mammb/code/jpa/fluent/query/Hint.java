@@ -17,6 +17,7 @@ package com.mammb.code.jpa.fluent.query;
 
 import jakarta.persistence.EntityGraph;
 import jakarta.persistence.TypedQuery;
+import java.util.Objects;
 
 /**
  * The query hint.
@@ -45,6 +46,15 @@ public interface Hint {
     void apply(TypedQuery<?> query);
 
 
+    /**
+     * Get whether this hint is a loadgraph or a fetchgraph.
+     * @return {@code true} if the value of this hint is an {@link EntityGraph}
+     */
+    default boolean isEntityGraph() {
+        return getValue() instanceof EntityGraph<?>;
+    }
+
+
     /**
      * Create a loadgraph hint.
      * @param entityGraph the {@link EntityGraph}
@@ -72,14 +82,15 @@ public interface Hint {
      * @return the hint element
      */
     static Hint of(String name, Object value) {
-        return new Hint() {
+        record NamedHint(String name, Object value) implements Hint {
             @Override
             public String getName() { return name; }
             @Override
             public Object getValue() { return value; }
             @Override
             public void apply(TypedQuery<?> query) { query.setHint(getName(), getValue()); }
-        };
+        }
+        return new NamedHint(Objects.requireNonNull(name), value);
     }
 
 }
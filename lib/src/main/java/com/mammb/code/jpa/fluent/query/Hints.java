@@ -18,9 +18,11 @@ package com.mammb.code.jpa.fluent.query;
 import jakarta.persistence.TypedQuery;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * The query hints.
+ * The implementation is immutable, and equal if the hints are equal.
  * @author Naotsugu Kobayashi
  */
 public interface Hints {
@@ -34,8 +36,9 @@ public interface Hints {
 
     /**
      * Add hint.
+     * This {@link Hints} is not changed.
      * @param hint the {@link Hint}
-     * @return the {@link Hints}
+     * @return the new {@link Hints} with the hint added
      */
     Hints add(Hint hint);
 
@@ -65,18 +68,19 @@ public interface Hints {
      * @return the {@link Hints}
      */
     private static Hints of() {
-        return new Hints() {
-            private final List<Hint> list = new ArrayList<>();
+        record HintList(List<Hint> list) implements Hints {
             @Override
             public void apply(TypedQuery<?> query) {
                 list.forEach(hint -> hint.apply(query));
             }
             @Override
             public Hints add(Hint hint) {
-                list.add(hint);
-                return this;
+                var added = new ArrayList<>(list);
+                added.add(Objects.requireNonNull(hint));
+                return new HintList(List.copyOf(added));
             }
-        };
+        }
+        return new HintList(List.of());
     }
 
 }
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.core.RootSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.ParameterExpression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.IdentifiableType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The keyset query.
+ * <p>
+ * Translates the sort orders, including the id tie-breaker, into the seek predicate
+ * {@code (a > ?) OR (a = ? AND b > ?) OR (a = ? AND b = ? AND id > ?)},
+ * because the row value comparison {@code (a, b, id) > (?, ?, ?)} is not available in the criteria API.
+ * The query of the first slice and the seek query are created once, and reused for each slice.
+ * <p>
+ * The null is ordered as the greatest value, i.e. last in ascending order and first in descending order,
+ * by the preceding sort of {@code CASE WHEN a IS NULL THEN 1 ELSE 0 END} for each nullable sort key.
+ * The seek query is created for each combination of the null keys, with {@code a IS NULL} in place of {@code a = ?}.
+ * <p>
+ * The sort key values of the last element are read by the public getters,
+ * and the id by {@link PersistenceUnitUtil#getIdentifier(Object)}, so a proxy of the provider is also read.
+ * @param <E> the type of entity
+ * @param <R> the type of root
+ * @param <U> the type of query result
+ * @author Naotsugu Kobayashi
+ */
+final class Keyset<E, R extends RootAware<E>, U> {
+
+    /** The primitive types and their wrapper types. */
+    private static final Map<Class<?>, Class<?>> WRAPPERS = Map.of(
+        boolean.class, Boolean.class, char.class, Character.class, byte.class, Byte.class,
+        short.class, Short.class, int.class, Integer.class, long.class, Long.class,
+        float.class, Float.class, double.class, Double.class);
+
+    private final EntityManager em;
+    private final RootSource<E, R> rootSource;
+    private final Mapper<E, R, U> mapper;
+    private final Filter<E, R> filter;
+    private final Sorts<E, R> sorts;
+    private final Hints hints;
+
+    /** The query of the first slice. */
+    private Compiled<U> first;
+
+    /** The seek queries for each combination of the null keys. */
+    private final Map<List<Boolean>, Compiled<U>> seeks = new HashMap<>();
+
+
+    private Keyset(EntityManager em, RootSource<E, R> rootSource, Mapper<E, R, U> mapper,
+            Filter<E, R> filter, Sorts<E, R> sorts, Hints hints) {
+        this.em = Objects.requireNonNull(em);
+        this.rootSource = Objects.requireNonNull(rootSource);
+        this.mapper = Objects.requireNonNull(mapper);
+        this.filter = Objects.requireNonNull(filter);
+        this.sorts = Objects.requireNonNull(sorts);
+        this.hints = Objects.requireNonNull(hints);
+    }
+
+
+    /**
+     * Create a {@link Keyset}.
+     * @param em {@link EntityManager}
+     * @param rootSource {@link RootSource}
+     * @param mapper {@link Mapper}
+     * @param filter {@link Filter}
+     * @param sorts {@link Sorts}
+     * @param hints {@link Hints}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result value
+     * @return a {@link Keyset}
+     */
+    static <E, R extends RootAware<E>, U> Keyset<E, R, U> of(
+            EntityManager em, RootSource<E, R> rootSource, Mapper<E, R, U> mapper,
+            Filter<E, R> filter, Sorts<E, R> sorts, Hints hints) {
+        return new Keyset<>(em, rootSource, mapper, filter, sorts, hints);
+    }
+
+
+    /**
+     * Read the slice at the given point.
+     * @param point the {@link KeysetPoint}
+     * @return the {@link KeysetSlice}
+     */
+    KeysetSlice<U> slice(KeysetPoint point) {
+        Compiled<U> compiled;
+        if (point.isFirst()) {
+            if (Objects.isNull(first)) {
+                first = compile(null);
+            }
+            compiled = first;
+        } else {
+            compiled = seeks.computeIfAbsent(point.getKeys().stream().map(Objects::isNull).toList(), this::compile);
+            bind(compiled, point);
+        }
+        TypedQuery<U> query = compiled.query();
+        query.setMaxResults(point.getSize() + 1);
+        List<U> result = query.getResultList();
+        boolean hasNext = result.size() > point.getSize();
+        List<U> content = hasNext ? result.subList(0, point.getSize()) : result;
+        List<Object> nextKeys = content.isEmpty() ? List.of() : keysOf(compiled, content.get(content.size() - 1));
+        return KeysetSlice.of(content, hasNext, point, nextKeys);
+    }
+
+
+    /**
+     * Compile the query.
+     * @param nulls whether each key of the seek is null. If the query does not seek, then {@code null}
+     * @return the compiled query
+     */
+    private Compiled<U> compile(List<Boolean> nulls) {
+
+        long start = System.nanoTime();
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        FetchMapper.rejectCollections(rootSource, mapper, cb);
+        CriteriaQuery<U> cq = QueryBuilder.criteriaQuery(cb, rootSource, mapper, filter, sorts);
+        if (!(cq.getSelection() instanceof Root<?>)) {
+            throw new IllegalStateException("Keyset pagination requires the root entity result.");
+        }
+
+        List<Order> orders = cq.getOrderList();
+        List<Expression<?>> keys = orders.stream().<Expression<?>>map(Order::getExpression).toList();
+        // the readers are resolved here, so an unreadable sort key fails before the execution
+        List<Function<Object, Object>> readers = keys.stream().map(this::reader).toList();
+        List<Boolean> nullables = keys.stream().map(Keyset::isNullable).toList();
+
+        List<Order> nullsOrdered = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (nullables.get(i)) {
+                Expression<Integer> isNull = cb.<Integer>selectCase().when(keys.get(i).isNull(), 1).otherwise(0);
+                nullsOrdered.add(orders.get(i).isAscending() ? cb.asc(isNull) : cb.desc(isNull));
+            }
+            nullsOrdered.add(orders.get(i));
+        }
+        cq.orderBy(nullsOrdered);
+
+        List<ParameterExpression<?>> params = new ArrayList<>();
+        if (Objects.nonNull(nulls)) {
+            if (nulls.size() != keys.size()) {
+                throw new IllegalArgumentException("The number of keys does not match the sort keys. " + nulls.size());
+            }
+            List<Predicate> ors = new ArrayList<>();
+            List<Predicate> eqs = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                Expression<?> key = keys.get(i);
+                boolean ascending = orders.get(i).isAscending();
+                if (nulls.get(i)) {
+                    // no value is greater than the null, and the non-null values are less than the null
+                    params.add(null);
+                    if (!ascending) {
+                        ors.add(and(cb, eqs, key.isNotNull()));
+                    }
+                    eqs.add(key.isNull());
+                } else {
+                    ParameterExpression<?> param = cb.parameter(wrap(key.getJavaType()), "keyset" + i);
+                    params.add(param);
+                    Predicate next = compare(cb, ascending, key, param);
+                    ors.add(and(cb, eqs, ascending && nullables.get(i) ? cb.or(next, key.isNull()) : next));
+                    eqs.add(cb.equal(key, param));
+                }
+            }
+            Predicate seekPredicate = cb.or(ors.toArray(Predicate[]::new));
+            cq.where(Objects.isNull(cq.getRestriction())
+                ? seekPredicate
+                : cb.and(cq.getRestriction(), seekPredicate));
+        }
+
+        TypedQuery<U> query = QueryTrace.createQuery(em, cq, start, false,
+            rootSource, mapper, filter, sorts, Objects.requireNonNullElse(nulls, List.of()));
+        hints.apply(query);
+        return new Compiled<>(readers, Collections.unmodifiableList(params), query);
+    }
+
+
+    private static void bind(Compiled<?> compiled, KeysetPoint point) {
+        for (int i = 0; i < compiled.params().size(); i++) {
+            @SuppressWarnings("unchecked")
+            ParameterExpression<Object> param = (ParameterExpression<Object>) compiled.params().get(i);
+            if (Objects.nonNull(param)) {
+                compiled.query().setParameter(param, point.getKeys().get(i));
+            }
+        }
+    }
+
+
+    /**
+     * Get the sort key values of the given entity.
+     * @param compiled the compiled query
+     * @param entity the entity
+     * @return the sort key values
+     */
+    private static List<Object> keysOf(Compiled<?> compiled, Object entity) {
+        List<Object> values = new ArrayList<>(compiled.readers().size());
+        for (Function<Object, Object> reader : compiled.readers()) {
+            values.add(reader.apply(entity));
+        }
+        return values;
+    }
+
+
+    private Function<Object, Object> reader(Expression<?> expression) {
+        if (expression instanceof Root<?>) {
+            return Function.identity();
+        } else if (expression instanceof Join<?, ?> join) {
+            return reader(reader(join.getParent()), join.getAttribute());
+        } else if (expression instanceof Path<?> path && path.getModel() instanceof Attribute<?, ?> attribute) {
+            return reader(reader(path.getParentPath()), attribute);
+        }
+        throw new IllegalStateException("Keyset pagination requires the attribute path as sort key. " + expression);
+    }
+
+
+    private Function<Object, Object> reader(Function<Object, Object> owner, Attribute<?, ?> attribute) {
+        Function<Object, Object> read;
+        if (attribute instanceof SingularAttribute<?, ?> singular && singular.isId() &&
+            attribute.getDeclaringType() instanceof IdentifiableType<?> type && type.hasSingleIdAttribute()) {
+            // the id of a proxy is read without the initialization
+            read = em.getEntityManagerFactory().getPersistenceUnitUtil()::getIdentifier;
+        } else {
+            Method getter = getter(attribute.getDeclaringType().getJavaType(), attribute.getName());
+            read = obj -> {
+                try {
+                    return getter.invoke(obj);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+        return entity -> {
+            Object obj = owner.apply(entity);
+            return Objects.isNull(obj) ? null : read.apply(obj);
+        };
+    }
+
+
+    private static Method getter(Class<?> type, String name) {
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String prefix : List.of("get", "is")) {
+            try {
+                Method method = type.getMethod(prefix + suffix);
+                if (method.getReturnType() != void.class) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignore) {
+                // try the next prefix
+            }
+        }
+        throw new IllegalStateException(
+            "Keyset pagination requires the public getter of the sort key. " + type.getName() + "." + name);
+    }
+
+
+    /**
+     * Get whether the given sort key can be null.
+     * The id and the inner join are not null, and others are by the optionality of the metamodel.
+     * @param expression the sort key
+     * @return {@code true} if the sort key can be null
+     */
+    private static boolean isNullable(Expression<?> expression) {
+        if (expression instanceof Root<?>) {
+            return false;
+        } else if (expression instanceof Join<?, ?> join) {
+            return join.getJoinType() != JoinType.INNER || isNullable(join.getParent());
+        } else if (expression instanceof Path<?> path && path.getModel() instanceof SingularAttribute<?, ?> attribute) {
+            return (!attribute.isId() && attribute.isOptional()) || isNullable(path.getParentPath());
+        }
+        return true;
+    }
+
+
+    private static Predicate and(CriteriaBuilder cb, List<Predicate> eqs, Predicate predicate) {
+        List<Predicate> and = new ArrayList<>(eqs);
+        and.add(predicate);
+        return cb.and(and.toArray(Predicate[]::new));
+    }
+
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Predicate compare(CriteriaBuilder cb, boolean ascending, Expression key, Expression param) {
+        return ascending ? cb.greaterThan(key, param) : cb.lessThan(key, param);
+    }
+
+
+    private static Class<?> wrap(Class<?> type) {
+        return WRAPPERS.getOrDefault(type, type);
+    }
+
+
+    /**
+     * The compiled query.
+     * @param readers the readers of sort key values
+     * @param params the parameters of sort key, {@code null} for the null key. If the query does not seek, then empty
+     * @param query the query
+     * @param <U> the type of query result
+     */
+    private record Compiled<U>(List<Function<Object, Object>> readers, List<ParameterExpression<?>> params,
+            TypedQuery<U> query) { }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The current point of keyset slice.
+ * <p>
+ * The keys are the sort key values of the last element of the previous slice,
+ * including the id that is appended as a tie-breaker.
+ * The next slice is read by seeking to the keys instead of skipping rows by offset.
+ * @author Naotsugu Kobayashi
+ */
+public interface KeysetPoint extends SlicePoint {
+
+    /**
+     * Get the sort key values of the last element of the previous slice.
+     * If this point is the first slice, then an empty list.
+     * @return the sort key values
+     */
+    List<Object> getKeys();
+
+
+    /**
+     * Gets whether this point is the first slice.
+     * @return if this point is the first slice, then {@code true}
+     */
+    default boolean isFirst() {
+        return getKeys().isEmpty();
+    }
+
+
+    /**
+     * Create the next {@link KeysetPoint}.
+     * @param keys the sort key values of the last element of the current slice
+     * @return the next {@link KeysetPoint}
+     */
+    default KeysetPoint next(List<?> keys) {
+        return of(getNumber() + 1, getSize(), keys);
+    }
+
+
+    @Override
+    default KeysetPoint withSize(int size) {
+        return of(getNumber(), size, getKeys());
+    }
+
+
+    /**
+     * Create the {@link KeysetPoint} of the first slice.
+     * @return the {@link KeysetPoint}
+     */
+    static KeysetPoint of() {
+        return of(15);
+    }
+
+
+    /**
+     * Create the {@link KeysetPoint} of the first slice.
+     * @param size the size of slice
+     * @return the {@link KeysetPoint}
+     */
+    static KeysetPoint of(int size) {
+        return of(0, size, List.of());
+    }
+
+
+    /**
+     * Create a {@link KeysetPoint}.
+     * @param number the number of the current slice
+     * @param size the size of slice
+     * @param keys the sort key values of the last element of the previous slice
+     * @return the {@link KeysetPoint}
+     */
+    static KeysetPoint of(int number, int size, List<?> keys) {
+        return new KeysetPoint() {
+            private final List<Object> list = Objects.isNull(keys)
+                ? List.of() : Collections.unmodifiableList(new ArrayList<>(keys));
+            @Override
+            public int getNumber() { return number; }
+            @Override
+            public int getSize() { return size; }
+            @Override
+            public List<Object> getKeys() { return list; }
+        };
+    }
+
+}
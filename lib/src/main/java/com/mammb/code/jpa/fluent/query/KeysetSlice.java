@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A slice of data elements read by keyset.
+ * @param <E> the type of entry
+ * @author Naotsugu Kobayashi
+ */
+public interface KeysetSlice<E> extends Slice<E> {
+
+    /**
+     * Get the {@link KeysetPoint} to read the next slice.
+     * If this slice has no content, then the current point.
+     * @return the {@link KeysetPoint} of the next slice
+     */
+    KeysetPoint nextPoint();
+
+
+    /**
+     * Create the {@link KeysetSlice} by given arguments.
+     * @param content the content of {@link Slice}.
+     * @param hasNext whether the next slice exists
+     * @param keysetPoint the current point of slice
+     * @param nextKeys the sort key values of the last element of the content
+     * @param <E> the type of content
+     * @return the created {@link KeysetSlice}
+     */
+    static <E> KeysetSlice<E> of(List<E> content, boolean hasNext, KeysetPoint keysetPoint, List<?> nextKeys) {
+
+        return new KeysetSlice<>() {
+
+            private final List<E> list = Objects.isNull(content) ? List.of() : List.copyOf(content);
+
+            @Override
+            public int getNumber() {
+                return keysetPoint.getNumber();
+            }
+
+            @Override
+            public int getSize() {
+                return keysetPoint.getSize();
+            }
+
+            @Override
+            public List<E> getContent() {
+                return list;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public KeysetPoint nextPoint() {
+                return list.isEmpty() ? keysetPoint : keysetPoint.next(nextKeys);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.Metamodel;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * The detector of the N+1 lazy loading of the query results.
+ * <p>
+ * While the detector is open, the associations of the entities returned by the queries on the current thread,
+ * which are not loaded when the query returns, are tracked.
+ * When the detector is closed, the associations loaded afterwards are counted for each query and attribute,
+ * and the ones loaded more than the threshold are reported as {@link Violation}.
+ * <pre>
+ *     try (var detector = LazyLoadDetector.open(em, 1)) {
+ *         List&lt;Issue&gt; issues = Querying.of(IssueModel.root()).toList().on(em);
+ *         issues.forEach(issue -&gt; issue.getJournals().size());
+ *     } // IllegalStateException is thrown, as journals are loaded lazily for each issue
+ * </pre>
+ * The loaded state is checked by {@link PersistenceUnitUtil#isLoaded(Object, String)},
+ * so the associations which the provider loads eagerly, e.g. without weaving, are not tracked.
+ * <p>
+ * The loads of a singular association are counted by the distinct target entities, so the entities sharing
+ * one target, e.g. the issues of one project, are counted once. The loads of a collection are counted
+ * for each owner entity, even if the provider loads them in a batch.
+ * <p>
+ * The entities are referred to weakly, and the number of associations tracked by a detector is bounded
+ * by the system property {@value #MAX_TRACKED}, 10000 by default. The associations beyond it are not tracked.
+ * @author Naotsugu Kobayashi
+ */
+public final class LazyLoadDetector implements AutoCloseable {
+
+    /** The name of the system property of the maximum number of associations tracked by a detector. */
+    public static final String MAX_TRACKED = "com.mammb.code.jpa.fluent.query.lazyload.maxTracked";
+
+    /** The logger. */
+    private static final System.Logger log = System.getLogger(LazyLoadDetector.class.getName());
+
+    /** The detector of the current thread. */
+    private static final ThreadLocal<LazyLoadDetector> CURRENT = new ThreadLocal<>();
+
+    /** The number of open detectors. */
+    private static final AtomicInteger OPENED = new AtomicInteger();
+
+    /** The enclosing detector. */
+    private final LazyLoadDetector enclosing;
+
+    /** The metamodel. */
+    private final Metamodel metamodel;
+
+    /** The persistence unit util. */
+    private final PersistenceUnitUtil util;
+
+    /** The allowed number of lazy loads for each query and attribute. */
+    private final int threshold;
+
+    /** The reporter of violations, or {@code null} to throw. */
+    private final Consumer<Violation> reporter;
+
+    /** The maximum number of associations tracked. */
+    private final int maxTracked;
+
+    /** The associations not loaded when the query returned. */
+    private final List<Pending> pendings = new ArrayList<>();
+
+    /** The association attributes by the entity class. */
+    private final Map<Class<?>, List<Attribute<?, ?>>> associations = new HashMap<>();
+
+    /** Whether this detector is closed. */
+    private boolean closed;
+
+    /** Whether the associations beyond the maximum are dropped. */
+    private boolean truncated;
+
+
+    private LazyLoadDetector(EntityManager em, int threshold, Consumer<Violation> reporter) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative. " + threshold);
+        }
+        this.metamodel = em.getMetamodel();
+        this.util = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        this.threshold = threshold;
+        this.reporter = reporter;
+        this.maxTracked = Integer.getInteger(MAX_TRACKED, 10_000);
+        this.enclosing = CURRENT.get();
+    }
+
+
+    /**
+     * Open a detector on the current thread, which throws {@link IllegalStateException} on close
+     * if any association is loaded lazily more than the threshold.
+     * @param em the {@link EntityManager}
+     * @param threshold the allowed number of lazy loads for each query and attribute
+     * @return the detector
+     */
+    public static LazyLoadDetector open(EntityManager em, int threshold) {
+        return open(em, threshold, null);
+    }
+
+
+    /**
+     * Open a detector on the current thread, which reports the violations to the given reporter on close.
+     * @param em the {@link EntityManager}
+     * @param threshold the allowed number of lazy loads for each query and attribute
+     * @param reporter the reporter of violations, or {@code null} to throw {@link IllegalStateException}
+     * @return the detector
+     */
+    public static LazyLoadDetector open(EntityManager em, int threshold, Consumer<Violation> reporter) {
+        var detector = new LazyLoadDetector(em, threshold, reporter);
+        CURRENT.set(detector);
+        OPENED.incrementAndGet();
+        return detector;
+    }
+
+
+    /**
+     * Get the violations at this point.
+     * @return the violations
+     */
+    public List<Violation> violations() {
+        Map<Pending.Key, Set<Object>> loads = new LinkedHashMap<>();
+        for (Pending pending : pendings) {
+            Object entity = pending.entity().get();
+            if (Objects.nonNull(entity) && util.isLoaded(entity, pending.key().attribute())) {
+                loads.computeIfAbsent(pending.key(), k -> new HashSet<>()).add(target(pending, entity));
+            }
+        }
+        return loads.entrySet().stream()
+            .filter(e -> e.getValue().size() > threshold)
+            .map(e -> new Violation(e.getKey().origin().rootClass(), e.getKey().origin().callSite(),
+                e.getKey().attribute(), e.getValue().size()))
+            .toList();
+    }
+
+
+    /**
+     * Get the target of the lazy load, which is the identifier of the entity of a singular association,
+     * or the owner entity of a collection.
+     * @param pending the pending association
+     * @param entity the owner entity
+     * @return the target
+     */
+    private Object target(Pending pending, Object entity) {
+        if (Objects.nonNull(pending.member())) {
+            try {
+                Object value = value(pending.member(), entity);
+                if (Objects.nonNull(value)) {
+                    Object id = util.getIdentifier(value);
+                    return Objects.nonNull(id) ? id : new Identity(value);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.log(System.Logger.Level.DEBUG, "Could not get the target of {0}.", pending.key().attribute());
+            }
+        }
+        return new Identity(entity);
+    }
+
+
+    private static Object value(Member member, Object entity) throws ReflectiveOperationException {
+        if (member instanceof Field field) {
+            field.setAccessible(true);
+            return field.get(entity);
+        } else if (member instanceof Method method) {
+            method.setAccessible(true);
+            return method.invoke(entity);
+        }
+        return null;
+    }
+
+
+    /**
+     * Close this detector, and report the violations.
+     * The enclosing detector is restored as the current one. If the detectors opened within this detector
+     * are not closed yet, they are closed without reporting, and {@link IllegalStateException} is thrown.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        LazyLoadDetector top = CURRENT.get();
+        boolean onThread = false;
+        for (LazyLoadDetector d = top; Objects.nonNull(d); d = d.enclosing) {
+            onThread |= (d == this);
+        }
+        if (onThread) {
+            for (LazyLoadDetector d = top; d != this; d = d.enclosing) {
+                d.abandon();
+            }
+            if (Objects.isNull(enclosing)) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(enclosing);
+            }
+        }
+        List<Violation> violations = violations();
+        abandon();
+
+        if (!violations.isEmpty()) {
+            if (Objects.nonNull(reporter)) {
+                violations.forEach(reporter);
+            } else {
+                throw new IllegalStateException(violations.stream()
+                    .map(Violation::toString)
+                    .collect(Collectors.joining(System.lineSeparator())));
+            }
+        }
+        if (top != this) {
+            throw new IllegalStateException("The detector is not the current one.");
+        }
+    }
+
+
+    private void abandon() {
+        if (!closed) {
+            closed = true;
+            OPENED.decrementAndGet();
+            pendings.clear();
+        }
+    }
+
+
+    /**
+     * Get whether any detector is open on the current thread.
+     * @return {@code true} if any detector is open
+     */
+    static boolean active() {
+        return OPENED.get() > 0 && Objects.nonNull(CURRENT.get());
+    }
+
+
+    /**
+     * Track the results of the query executed on the current thread.
+     * @param rootClass the class of the query root
+     * @param results the results of the query
+     */
+    static void track(Class<?> rootClass, List<?> results) {
+        if (OPENED.get() == 0) {
+            return;
+        }
+        LazyLoadDetector detector = CURRENT.get();
+        if (Objects.nonNull(detector) && !results.isEmpty()) {
+            detector.add(new Origin(rootClass, QueryTrace.callSite()), results);
+        }
+    }
+
+
+    /**
+     * Stop tracking the given attribute of the given entities, since it is loaded by the library.
+     * @param entities the entities
+     * @param attribute the name of attribute
+     */
+    static void loaded(List<?> entities, String attribute) {
+        if (OPENED.get() == 0) {
+            return;
+        }
+        LazyLoadDetector detector = CURRENT.get();
+        if (Objects.nonNull(detector)) {
+            Set<Object> set = Collections.newSetFromMap(new IdentityHashMap<>());
+            set.addAll(entities);
+            detector.pendings.removeIf(pending ->
+                pending.key().attribute().equals(attribute) && set.contains(pending.entity().get()));
+        }
+    }
+
+
+    private void add(Origin origin, List<?> results) {
+        for (Object result : results) {
+            if (Objects.isNull(result)) {
+                continue;
+            }
+            for (Attribute<?, ?> attribute : associations(result.getClass())) {
+                if (util.isLoaded(result, attribute.getName())) {
+                    continue;
+                }
+                if (pendings.size() >= maxTracked) {
+                    if (!truncated) {
+                        truncated = true;
+                        log.log(System.Logger.Level.WARNING, "The lazy load detector tracks no more than {0} associations. " +
+                            "The associations of the query at {1} and later are not tracked.", maxTracked, origin.callSite());
+                    }
+                    return;
+                }
+                pendings.add(new Pending(new Pending.Key(origin, attribute.getName()), new WeakReference<>(result),
+                    attribute.isCollection() ? null : attribute.getJavaMember()));
+            }
+        }
+    }
+
+
+    private List<Attribute<?, ?>> associations(Class<?> type) {
+        // the most specific entity type, e.g. the subclass of an entity, or the entity of a proxy class
+        return associations.computeIfAbsent(type, t -> metamodel.getEntities().stream()
+            .filter(entity -> entity.getJavaType().isAssignableFrom(t))
+            .reduce((a, b) -> a.getJavaType().isAssignableFrom(b.getJavaType()) ? b : a)
+            .map(EntityType::getAttributes)
+            .map(attributes -> attributes.stream()
+                .filter(attribute -> attribute.isAssociation() || attribute.isCollection())
+                .<Attribute<?, ?>>map(attribute -> attribute)
+                .toList())
+            .orElse(List.of()));
+    }
+
+
+    /**
+     * The violation of lazy loading.
+     * @param rootClass the class of the root of the originating query
+     * @param callSite the call site of the originating query
+     * @param attribute the name of the association attribute loaded lazily
+     * @param loads the number of lazy loads
+     */
+    public record Violation(Class<?> rootClass, String callSite, String attribute, int loads) {
+
+        @Override
+        public String toString() {
+            return String.format("N+1 lazy loading: %s.%s was loaded %d times after the query at %s",
+                Objects.isNull(rootClass) ? "-" : rootClass.getSimpleName(), attribute, loads, callSite);
+        }
+    }
+
+
+    /** The originating query. */
+    private record Origin(Class<?> rootClass, String callSite) { }
+
+
+    /** The association not loaded when the query returned, with the member of a singular association. */
+    private record Pending(Key key, WeakReference<Object> entity, Member member) {
+        private record Key(Origin origin, String attribute) { }
+    }
+
+
+    /** The target compared by identity. */
+    private record Identity(Object object) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Identity that && object == that.object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ package com.mammb.code.jpa.fluent.query;
 import com.mammb.code.jpa.fluent.core.RootAware;
 import com.mammb.code.jpa.fluent.core.RootSource;
 import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.AbstractQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Expression;
@@ -27,9 +28,11 @@ import jakarta.persistence.criteria.Subquery;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Mapper.
+ * The mappers created by the factory methods are immutable, and equal if their components are equal.
  * @param <E> the type of entity
  * @param <R> the type of root
  * @param <U> the type of result
@@ -52,25 +55,31 @@ public interface Mapper<E, R extends RootAware<E>, U> {
      * A false value will cause duplicates to be retained.
      * @param distinct boolean value specifying whether duplicate results must be eliminated
      *        from the query result or whether they must be retained
-     * @return this Mapper
+     * @return a new {@link Mapper} with the distinct applied
      */
     Mapper<E, R, U> distinct(boolean distinct);
 
 
+    /**
+     * Complete the query built by this {@link Mapper}, after the filter and the sorts are applied.
+     * @param query the query
+     */
+    default void complete(AbstractQuery<U> query) { }
+
+
     /**
      * Create a general {@link Mapper}.
+     * Distinct is applied only if the query can produce duplicates, unless specified by {@link #distinct(boolean)}.
      * @param <E> the type of entity
      * @param <R> the type of root
      * @return the general {@link Mapper}
      */
     static <E, R extends RootAware<E>> Mapper<E, R, E> of() {
-        return new Mapper<>() {
-            // distinct true by default
-            private QueryDecorator<E> queryDecorator = query -> query.distinct(true);
+        // the null distinct is applied only if the query can produce duplicates
+        record EntityMapper<E, R extends RootAware<E>>(Boolean distinct) implements Mapper<E, R, E> {
             @Override
             public R apply(RootSource<E, R> rootSource, CriteriaBuilder builder) {
                 CriteriaQuery<E> query = builder.createQuery(rootSource.rootClass());
-                queryDecorator.decorate(query);
                 QueryContext.put(query);
                 R root = rootSource.root(query.from(rootSource.rootClass()), query, builder);
                 query.select(QueryContext.put(root.get()));
@@ -78,10 +87,19 @@ public interface Mapper<E, R extends RootAware<E>, U> {
             }
             @Override
             public Mapper<E, R, E> distinct(boolean distinct) {
-                queryDecorator = query -> query.distinct(distinct);
-                return this;
+                return new EntityMapper<>(distinct);
             }
-        };
+            @Override
+            public void complete(AbstractQuery<E> query) {
+                // the joins are known after the filter and the sorts are applied
+                if (Objects.isNull(distinct)) {
+                    QueryDecorator.<E>distinctIfDuplicable().decorate(query);
+                } else {
+                    query.distinct(distinct);
+                }
+            }
+        }
+        return new EntityMapper<>(null);
     }
 
 
@@ -96,23 +114,23 @@ public interface Mapper<E, R extends RootAware<E>, U> {
      */
     static <E, R extends RootAware<E>, U> Mapper<E, R, U> of(
             Class<U> resultType, ExpressionSelector<E, R, U> selector) {
-        return new Mapper<>() {
-            private QueryDecorator<U> queryDecorator = QueryDecorator.empty();
+        record SelectMapper<E, R extends RootAware<E>, U>(
+                Class<U> resultType, ExpressionSelector<E, R, U> selector, boolean distinct) implements Mapper<E, R, U> {
             @Override
             public R apply(RootSource<E, R> rootSource, CriteriaBuilder builder) {
                 CriteriaQuery<U> query = builder.createQuery(resultType);
-                queryDecorator.decorate(query);
+                query.distinct(distinct);
                 QueryContext.put(query);
-                R root = rootSource.root(query.from(rootSource.rootClass()), query, builder);
+                R root = rootSource.root(QueryContext.put(query.from(rootSource.rootClass())), query, builder);
                 query.select(selector.apply(root));
                 return root;
             }
             @Override
             public Mapper<E, R, U> distinct(boolean distinct) {
-                queryDecorator = query -> query.distinct(distinct);
-                return this;
+                return new SelectMapper<>(resultType, selector, distinct);
             }
-        };
+        }
+        return new SelectMapper<>(resultType, selector, false);
     }
 
 
@@ -126,12 +144,12 @@ public interface Mapper<E, R extends RootAware<E>, U> {
      */
     static <E, R extends RootAware<E>> Mapper<E, R, Tuple> tuple(
             List<Selector<E, R, ?>> selectors, Grouping<E, R> grouping) {
-        return new Mapper<>() {
-            private QueryDecorator<Tuple> queryDecorator = QueryDecorator.empty();
+        record TupleMapper<E, R extends RootAware<E>>(
+                List<Selector<E, R, ?>> selectors, Grouping<E, R> grouping, boolean distinct) implements Mapper<E, R, Tuple> {
             @Override
             public R apply(RootSource<E, R> rootSource, CriteriaBuilder builder) {
                 CriteriaQuery<Tuple> query = builder.createTupleQuery();
-                queryDecorator.decorate(query);
+                query.distinct(distinct);
                 QueryContext.put(query);
                 R root = rootSource.root(query.from(rootSource.rootClass()), query, builder);
                 QueryContext.put(root.get());
@@ -142,10 +160,10 @@ public interface Mapper<E, R extends RootAware<E>, U> {
             }
             @Override
             public Mapper<E, R, Tuple> distinct(boolean distinct) {
-                queryDecorator = query -> query.distinct(distinct);
-                return this;
+                return new TupleMapper<>(selectors, grouping, distinct);
             }
-        };
+        }
+        return new TupleMapper<>(List.copyOf(selectors), grouping, false);
     }
 
 
@@ -163,12 +181,12 @@ public interface Mapper<E, R extends RootAware<E>, U> {
             Class<U> result,
             List<Selector<E, R, ?>> selectors,
             Grouping<E, R> grouping) {
-        return new Mapper<>() {
-            private QueryDecorator<U> queryDecorator = QueryDecorator.empty();
+        record ConstructMapper<E, R extends RootAware<E>, U>(Class<U> result,
+                List<Selector<E, R, ?>> selectors, Grouping<E, R> grouping, boolean distinct) implements Mapper<E, R, U> {
             @Override
             public R apply(RootSource<E, R> rootSource, CriteriaBuilder builder) {
                 CriteriaQuery<U> query = builder.createQuery(result);
-                queryDecorator.decorate(query);
+                query.distinct(distinct);
                 QueryContext.put(query);
                 R root = rootSource.root(query.from(rootSource.rootClass()), query, builder);
                 QueryContext.put(root.get());
@@ -179,10 +197,10 @@ public interface Mapper<E, R extends RootAware<E>, U> {
             }
             @Override
             public Mapper<E, R, U> distinct(boolean distinct) {
-                queryDecorator = query -> query.distinct(distinct);
-                return this;
+                return new ConstructMapper<>(result, selectors, grouping, distinct);
             }
-        };
+        }
+        return new ConstructMapper<>(result, List.copyOf(selectors), grouping, false);
     }
 
 
@@ -193,22 +211,21 @@ public interface Mapper<E, R extends RootAware<E>, U> {
      * @return a Subquery {@link Mapper}
      */
     static <E, R extends RootAware<E>> Mapper<E, R, E> subQuery() {
-        return new Mapper<>() {
-            private QueryDecorator<E> queryDecorator = QueryDecorator.empty();
+        record SubQueryMapper<E, R extends RootAware<E>>(boolean distinct) implements Mapper<E, R, E> {
             @Override
             public R apply(RootSource<E, R> subRootSource, CriteriaBuilder builder) {
-                Subquery<E> sq = QueryContext.query().subquery(subRootSource.rootClass());
-                queryDecorator.decorate(sq);
-                R root = subRootSource.root(sq.from(subRootSource.rootClass()), sq, builder);
+                Subquery<E> sq = QueryContext.criteria().subquery(subRootSource.rootClass());
+                sq.distinct(distinct);
+                R root = subRootSource.root(QueryContext.from(sq.from(subRootSource.rootClass())), sq, builder);
                 sq.select(root.get());
                 return root;
             }
             @Override
             public Mapper<E, R, E> distinct(boolean distinct) {
-                queryDecorator = query -> query.distinct(distinct);
-                return this;
+                return new SubQueryMapper<>(distinct);
             }
-        };
+        }
+        return new SubQueryMapper<>(false);
     }
 
 
@@ -223,22 +240,22 @@ public interface Mapper<E, R extends RootAware<E>, U> {
      */
     static <E, R extends RootAware<E>, U> Mapper<E, R, U> subQuery(
             Class<U> resultType, ExpressionSelector<E, R, U> selector) {
-        return new Mapper<>() {
-            private QueryDecorator<U> queryDecorator = QueryDecorator.empty();
+        record SubQuerySelectMapper<E, R extends RootAware<E>, U>(
+                Class<U> resultType, ExpressionSelector<E, R, U> selector, boolean distinct) implements Mapper<E, R, U> {
             @Override
             public R apply(RootSource<E, R> subRootSource, CriteriaBuilder builder) {
-                Subquery<U> sq = QueryContext.query().subquery(resultType);
-                queryDecorator.decorate(sq);
-                R root = subRootSource.root(sq.from(subRootSource.rootClass()), sq, builder);
+                Subquery<U> sq = QueryContext.criteria().subquery(resultType);
+                sq.distinct(distinct);
+                R root = subRootSource.root(QueryContext.from(sq.from(subRootSource.rootClass())), sq, builder);
                 sq.select(selector.apply(root));
                 return root;
             }
             @Override
             public Mapper<E, R, U> distinct(boolean distinct) {
-                queryDecorator = query -> query.distinct(distinct);
-                return this;
+                return new SubQuerySelectMapper<>(resultType, selector, distinct);
             }
-        };
+        }
+        return new SubQuerySelectMapper<>(resultType, selector, false);
     }
 
 
@@ -249,23 +266,22 @@ public interface Mapper<E, R extends RootAware<E>, U> {
      * @return a self correlate Subquery {@link Mapper}
      */
     static <E, R extends RootAware<E>> Mapper<E, R, E> correlate() {
-        return new Mapper<>() {
-            private QueryDecorator<E> queryDecorator = QueryDecorator.empty();
+        record CorrelateMapper<E, R extends RootAware<E>>(boolean distinct) implements Mapper<E, R, E> {
             @Override
             public R apply(RootSource<E, R> rootSource, CriteriaBuilder builder) {
-                Subquery<E> sq = QueryContext.query().subquery(rootSource.rootClass());
-                queryDecorator.decorate(sq);
-                Root<E> correlate = sq.correlate(QueryContext.root());
+                Subquery<E> sq = QueryContext.criteria().subquery(rootSource.rootClass());
+                sq.distinct(distinct);
+                Root<E> correlate = QueryContext.from(sq.correlate(QueryContext.root()));
                 R root = rootSource.root(correlate, sq, builder);
                 sq.select(root.get());
                 return root;
             }
             @Override
             public Mapper<E, R, E> distinct(boolean distinct) {
-                queryDecorator = query -> query.distinct(distinct);
-                return this;
+                return new CorrelateMapper<>(distinct);
             }
-        };
+        }
+        return new CorrelateMapper<>(false);
     }
 
 }
@@ -33,6 +33,16 @@ public interface Page<T> extends Slice<T> {
     long getTotalElements();
 
 
+    /**
+     * Get whether the total amount of elements is exact.
+     * If {@code false}, the actual total is more than {@link #getTotalElements()}.
+     * @return {@code true} if the total amount of elements is exact
+     */
+    default boolean isTotalExact() {
+        return true;
+    }
+
+
     /**
      * Get the number of total pages.
      * @return the number of total pages
@@ -48,7 +58,8 @@ public interface Page<T> extends Slice<T> {
      */
     @Override
     default boolean hasNext() {
-        return getNumber() + 1 < getTotalPages();
+        return getNumber() + 1 < getTotalPages()
+            || !isTotalExact() && getContent().size() == getSize();
     }
 
 
@@ -61,6 +72,20 @@ public interface Page<T> extends Slice<T> {
      * @return the created {@link Page}
      */
     static <T> Page<T> of(List<T> content, long totalElements, SlicePoint slicePoint) {
+        return of(content, totalElements, true, slicePoint);
+    }
+
+
+    /**
+     * Create the {@link Page} by given arguments.
+     * @param content the content of {@link Page}.
+     * @param totalElements the total amount of elements
+     * @param totalExact whether the total amount of elements is exact
+     * @param slicePoint the current point of slice
+     * @param <T> the type of content
+     * @return the created {@link Page}
+     */
+    static <T> Page<T> of(List<T> content, long totalElements, boolean totalExact, SlicePoint slicePoint) {
 
         return new Page<>() {
 
@@ -71,6 +96,9 @@ public interface Page<T> extends Slice<T> {
             @Override
             public long getTotalElements() { return totalElements; }
 
+            @Override
+            public boolean isTotalExact() { return totalExact; }
+
             @Override
             public List<T> getContent() { return list; }
 
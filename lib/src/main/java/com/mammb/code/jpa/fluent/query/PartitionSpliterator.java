@@ -0,0 +1,384 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.core.RootSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@link Spliterator} which reads the ranges of the id attribute in parallel.
+ * <p>
+ * The range between the minimum and the maximum of the id is divided into partitions,
+ * and each partition is read by page on its own {@link EntityManager}, which is cleared page by page.
+ * Each page seeks to the ids next to the previous page, with the query of the ids in the order of the id
+ * limited to the page size, followed by the query of the rows between the first and the last of the ids.
+ * So neither query skips rows by offset, and the sort orders apply within each page.
+ * {@link #trySplit()} hands over the half of the partitions not yet read,
+ * so the partitions are read concurrently by the parallel stream.
+ * @param <E> the type of entity
+ * @param <R> the type of root
+ * @param <U> the type of result value
+ * @author Naotsugu Kobayashi
+ */
+class PartitionSpliterator<E, R extends RootAware<E>, U> implements Spliterator<U> {
+
+    /** The source query. */
+    private final CreateQuery<E, R, U> source;
+
+    /** The {@link EntityManagerFactory}. */
+    private final EntityManagerFactory emf;
+
+    /** The id attribute. */
+    private final SingularAttribute<? super E, ?> id;
+
+    /** The partitions, shared by the split spliterators. */
+    private final List<Range> ranges;
+
+    /** The size of page. */
+    private final int pageSize;
+
+    /** The {@link EntityManager}s opened, shared by the split spliterators. */
+    private final Set<EntityManager> opened;
+
+    /** The index of the next partition. */
+    private int index;
+
+    /** The index after the last partition. */
+    private int fence;
+
+    /** The {@link EntityManager} of the current partition. */
+    private EntityManager em;
+
+    /** The iterator of the current partition. */
+    private Iterator<U> current;
+
+
+    private PartitionSpliterator(CreateQuery<E, R, U> source, EntityManagerFactory emf, SingularAttribute<? super E, ?> id,
+            List<Range> ranges, int pageSize, Set<EntityManager> opened, int index, int fence) {
+        this.source = source;
+        this.emf = emf;
+        this.id = id;
+        this.ranges = ranges;
+        this.pageSize = pageSize;
+        this.opened = opened;
+        this.index = index;
+        this.fence = fence;
+    }
+
+
+    /**
+     * Create the parallel {@link Stream} of the given query.
+     * The stream should be closed to close the {@link EntityManager}s of the partitions not completely read.
+     * @param em the {@link EntityManager} to read the range of the id
+     * @param source the source query
+     * @param partitions the number of partitions
+     * @param pageSize the size of page
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result value
+     * @return the parallel {@link Stream}
+     */
+    static <E, R extends RootAware<E>, U> Stream<U> stream(
+            EntityManager em, CreateQuery<E, R, U> source, int partitions, int pageSize) {
+
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive. " + partitions);
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive. " + pageSize);
+        }
+        SingularAttribute<? super E, ?> id = idAttribute(em, source.rootSource().rootClass());
+        Optional<Range> whole = range(em, source.rootSource(), source.filter(), id.getName());
+        if (whole.isEmpty()) {
+            return Stream.empty();
+        }
+        List<Range> ranges = whole.get().split(partitions);
+        var spliterator = new PartitionSpliterator<>(source, em.getEntityManagerFactory(), id,
+            ranges, pageSize, ConcurrentHashMap.newKeySet(), 0, ranges.size());
+        return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
+    }
+
+
+    @Override
+    public boolean tryAdvance(Consumer<? super U> action) {
+        while (Objects.isNull(current) || !current.hasNext()) {
+            closePartition();
+            if (index >= fence) {
+                return false;
+            }
+            openPartition(ranges.get(index++));
+        }
+        action.accept(current.next());
+        return true;
+    }
+
+
+    @Override
+    public Spliterator<U> trySplit() {
+        int mid = (index + fence) >>> 1;
+        if (mid <= index) {
+            return null;
+        }
+        var prefix = new PartitionSpliterator<>(source, emf, id, ranges, pageSize, opened, index, mid);
+        index = mid;
+        return prefix;
+    }
+
+
+    @Override
+    public long estimateSize() {
+        // the number of rows in the partitions is unknown
+        return (index < fence || Objects.nonNull(current)) ? Long.MAX_VALUE : 0;
+    }
+
+
+    @Override
+    public int characteristics() {
+        return 0;
+    }
+
+
+    private void openPartition(Range range) {
+        em = emf.createEntityManager();
+        opened.add(em);
+        current = new PartitionIterator(range);
+    }
+
+
+    private void closePartition() {
+        if (Objects.nonNull(em)) {
+            opened.remove(em);
+            em.close();
+            em = null;
+        }
+        current = null;
+    }
+
+
+    private void close() {
+        for (EntityManager e : List.copyOf(opened)) {
+            if (e.isOpen()) {
+                e.close();
+            }
+        }
+        opened.clear();
+    }
+
+
+    /**
+     * The iterator of a partition, which reads the partition page by page.
+     */
+    private class PartitionIterator implements Iterator<U> {
+
+        /** The lower bound of the id not yet read, inclusive. */
+        private long lower;
+
+        /** The upper bound of the id of the partition, inclusive. */
+        private final long upper;
+
+        /** Whether the last page has been read. */
+        private boolean last;
+
+        /** The iterator of the current page. */
+        private Iterator<U> page = Collections.emptyIterator();
+
+        PartitionIterator(Range range) {
+            this.lower = range.from();
+            this.upper = range.to();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext()) {
+                if (last) {
+                    return false;
+                }
+                page = readPage();
+            }
+            return true;
+        }
+
+        @Override
+        public U next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+
+        private Iterator<U> readPage() {
+            em.clear();
+            List<? extends Number> ids = ids(new Range(lower, upper));
+            if (ids.isEmpty()) {
+                last = true;
+                return Collections.emptyIterator();
+            }
+            long high = ids.get(ids.size() - 1).longValue();
+            last = ids.size() < pageSize || high >= upper;
+            var range = new Range(ids.get(0).longValue(), high);
+            lower = high + 1;
+            Filter<E, R> filter = source.filter().and(range.filter(id.getName(), id.getJavaType()));
+            return QueryBuilder.query(em, source.rootSource(), source.mapper(), filter, source.sorts(), source.hints())
+                .getResultList().iterator();
+        }
+
+        private List<? extends Number> ids(Range range) {
+            long start = System.nanoTime();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<? extends Number> cq;
+            Filter<E, R> filter = source.filter().and(range.filter(id.getName(), id.getJavaType()));
+            try (var scope = QueryContext.open(cb)) {
+                cq = ids(scope, cb, Range.wrap(id.getJavaType()), filter);
+            }
+            return QueryTrace.createQuery(em, cq, start, false, source.rootSource(), filter)
+                .setMaxResults(pageSize).getResultList();
+        }
+
+        private <N extends Number> CriteriaQuery<N> ids(QueryContext.Scope scope, CriteriaBuilder cb,
+                Class<N> idType, Filter<E, R> filter) {
+            CriteriaQuery<N> cq = scope.put(cb.createQuery(idType));
+            RootSource<E, R> rootSource = source.rootSource();
+            R root = rootSource.root(scope.put(cq.from(rootSource.rootClass())), cq, cb);
+            Path<N> path = root.get().get(id.getName());
+            cq.select(path).distinct(true);
+            Optional.ofNullable(filter.apply(root)).ifPresent(cq::where);
+            cq.orderBy(cb.asc(path));
+            return cq;
+        }
+    }
+
+
+    private static <E> SingularAttribute<? super E, ?> idAttribute(EntityManager em, Class<E> rootClass) {
+        EntityType<E> entityType = em.getMetamodel().entity(rootClass);
+        return entityType.getSingularAttributes().stream()
+            .filter(SingularAttribute::isId)
+            .filter(attribute -> entityType.hasSingleIdAttribute())
+            .filter(attribute -> Range.isIntegral(attribute.getJavaType()))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException(
+                "The partitioned stream requires a single integral id attribute. " + rootClass.getName()));
+    }
+
+
+    private static <E, R extends RootAware<E>> Optional<Range> range(
+            EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter, String idName) {
+        long start = System.nanoTime();
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cq;
+        try (var scope = QueryContext.open(cb)) {
+            cq = scope.put(cb.createTupleQuery());
+            R root = rootSource.root(scope.put(cq.from(rootSource.rootClass())), cq, cb);
+            Path<Number> id = root.get().get(idName);
+            cq.multiselect(cb.min(id), cb.max(id));
+            Optional.ofNullable(filter.apply(root)).ifPresent(cq::where);
+        }
+        Tuple tuple = QueryTrace.createQuery(em, cq, start, false, rootSource, filter).getSingleResult();
+        Number min = (Number) tuple.get(0);
+        Number max = (Number) tuple.get(1);
+        return (Objects.isNull(min) || Objects.isNull(max))
+            ? Optional.empty()
+            : Optional.of(new Range(min.longValue(), max.longValue()));
+    }
+
+
+    /**
+     * The range of the id.
+     * @param from the lower bound, inclusive
+     * @param to the upper bound, inclusive
+     */
+    record Range(long from, long to) {
+
+        List<Range> split(int partitions) {
+            // the bounds are computed in BigInteger, since the span of the whole range of long overflows
+            BigInteger first = BigInteger.valueOf(from);
+            BigInteger span = BigInteger.valueOf(to).subtract(first).add(BigInteger.ONE);
+            List<Range> list = new ArrayList<>();
+            long lower = from;
+            for (int i = 1; i <= partitions; i++) {
+                long upper = first.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(partitions)))
+                    .subtract(BigInteger.ONE).longValueExact();
+                if (upper >= lower) {
+                    list.add(new Range(lower, upper));
+                    if (upper == to) {
+                        break;
+                    }
+                    lower = upper + 1;
+                }
+            }
+            return list;
+        }
+
+        <E, R extends RootAware<E>> Filter<E, R> filter(String idName, Class<?> idType) {
+            Number lower = toIdType(from, idType);
+            Number upper = toIdType(to, idType);
+            return root -> {
+                CriteriaBuilder cb = QueryContext.builder();
+                Path<Number> id = root.get().get(idName);
+                return cb.and(cb.ge(id, lower), cb.le(id, upper));
+            };
+        }
+
+        private static Number toIdType(long value, Class<?> idType) {
+            if (idType == Integer.class || idType == int.class) {
+                return (int) value;
+            } else if (idType == Short.class || idType == short.class) {
+                return (short) value;
+            }
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Class<? extends Number> wrap(Class<?> idType) {
+            if (idType == int.class) {
+                return Integer.class;
+            } else if (idType == short.class) {
+                return Short.class;
+            } else if (idType == long.class) {
+                return Long.class;
+            }
+            return (Class<? extends Number>) idType;
+        }
+
+        static boolean isIntegral(Class<?> type) {
+            return type == Long.class || type == long.class
+                || type == Integer.class || type == int.class
+                || type == Short.class || type == short.class;
+        }
+    }
+
+}
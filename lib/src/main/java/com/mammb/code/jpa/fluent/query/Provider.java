@@ -0,0 +1,380 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import jakarta.persistence.metamodel.Attribute;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The persistence provider.
+ * Holds the provider specific hint names.
+ * @author Naotsugu Kobayashi
+ */
+public enum Provider {
+
+    /** Hibernate. */
+    HIBERNATE("org.hibernate.", "org.hibernate.fetchSize") {
+        @Override
+        public Integer jdbcBatchSize(EntityManager em, Integer batchSize) {
+            try {
+                Class<?> type = Class.forName("org.hibernate.Session");
+                Object session = em.unwrap(type);
+                Object previous = type.getMethod("getJdbcBatchSize").invoke(session);
+                type.getMethod("setJdbcBatchSize", Integer.class).invoke(session, batchSize);
+                return (Integer) previous;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        @Override
+        public <E> E managed(EntityManager em, Class<E> entityClass, Object id) {
+            try {
+                Class<?> sessionType = Class.forName("org.hibernate.engine.spi.SharedSessionContractImplementor");
+                Class<?> persisterType = Class.forName("org.hibernate.persister.entity.EntityPersister");
+                Class<?> keyType = Class.forName("org.hibernate.engine.spi.EntityKey");
+                Object session = em.unwrap(sessionType);
+                Object factory = sessionType.getMethod("getFactory").invoke(session);
+                Object metamodels = Class.forName("org.hibernate.engine.spi.SessionFactoryImplementor")
+                    .getMethod("getRuntimeMetamodels").invoke(factory);
+                Object mappings = Class.forName("org.hibernate.metamodel.RuntimeMetamodels")
+                    .getMethod("getMappingMetamodel").invoke(metamodels);
+                Object persister = Class.forName("org.hibernate.metamodel.MappingMetamodel")
+                    .getMethod("getEntityDescriptor", Class.class).invoke(mappings, entityClass);
+                Object key = sessionType.getMethod("generateEntityKey", Object.class, persisterType)
+                    .invoke(session, id, persister);
+                // the lookup of the persistence context, which creates no proxy unlike getReference()
+                Object context = sessionType.getMethod("getPersistenceContextInternal").invoke(session);
+                Object entity = Class.forName("org.hibernate.engine.spi.PersistenceContext")
+                    .getMethod("getEntity", keyType).invoke(context, key);
+                return entityClass.isInstance(entity) ? entityClass.cast(entity) : null;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        @Override
+        Optional<Root<?>> derivedRoot(CriteriaQuery<?> query, Subquery<?> subquery, int limit) {
+            try {
+                Class.forName("org.hibernate.query.criteria.JpaSubQuery")
+                    .getMethod("fetch", Number.class).invoke(subquery, limit);
+                Object root = Class.forName("org.hibernate.query.criteria.JpaSelectCriteria")
+                    .getMethod("from", Subquery.class).invoke(query, subquery);
+                return Optional.of((Root<?>) root);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+        @Override
+        boolean afterCompletion(EntityManager em, Runnable action) {
+            try {
+                Class<?> type = Class.forName("org.hibernate.SessionEventListener");
+                Object session = em.unwrap(Class.forName("org.hibernate.Session"));
+                if (LISTENING.contains(session)) {
+                    return true;
+                }
+                Object listeners = Array.newInstance(type, 1);
+                Array.set(listeners, 0, listener(type, Set.of("transactionCompletion"), action));
+                session.getClass().getMethod("addEventListeners", listeners.getClass()).invoke(session, listeners);
+                return LISTENING.add(session);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return false;
+            }
+        }
+        @Override
+        public Optional<String> sql(Query query) {
+            try {
+                Class<?> type = Class.forName("org.hibernate.query.Query");
+                Object hq = query.unwrap(type);
+                return Optional.ofNullable((String) type.getMethod("getQueryString").invoke(hq));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+    },
+
+    /**
+     * EclipseLink.
+     * The batch writing can only be configured by the persistence unit properties
+     * {@code eclipselink.jdbc.batch-writing} and {@code eclipselink.jdbc.batch-writing.size}.
+     */
+    ECLIPSELINK("org.eclipse.persistence.", "eclipselink.jdbc.fetch-size") {
+        @Override
+        public <E> E managed(EntityManager em, Class<E> entityClass, Object id) {
+            try {
+                Object unitOfWork = em.unwrap(Class.forName("org.eclipse.persistence.sessions.UnitOfWork"));
+                Object accessor = unitOfWork.getClass().getMethod("getIdentityMapAccessor").invoke(unitOfWork);
+                Object entity = accessor.getClass().getMethod("getFromIdentityMap", Object.class, Class.class)
+                    .invoke(accessor, id, entityClass);
+                return entityClass.isInstance(entity) ? entityClass.cast(entity) : null;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        @Override
+        boolean afterCompletion(EntityManager em, Runnable action) {
+            try {
+                Class<?> type = Class.forName("org.eclipse.persistence.sessions.SessionEventListener");
+                Object unitOfWork = em.unwrap(Class.forName("org.eclipse.persistence.sessions.UnitOfWork"));
+                if (LISTENING.contains(unitOfWork)) {
+                    return true;
+                }
+                Object manager = unitOfWork.getClass().getMethod("getEventManager").invoke(unitOfWork);
+                manager.getClass().getMethod("addListener", type).invoke(manager, listener(type,
+                    Set.of("postCommitUnitOfWork", "postRollbackTransaction", "postReleaseUnitOfWork"), action));
+                return LISTENING.add(unitOfWork);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return false;
+            }
+        }
+        @Override
+        public Optional<String> sql(Query query) {
+            try {
+                Class<?> type = Class.forName("org.eclipse.persistence.jpa.JpaQuery");
+                Object dq = type.getMethod("getDatabaseQuery").invoke(query.unwrap(type));
+                return Optional.ofNullable((String) Class.forName("org.eclipse.persistence.queries.DatabaseQuery")
+                    .getMethod("getSQLString").invoke(dq));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+        @Override
+        boolean batchFetch(TypedQuery<?> query, List<String> paths) {
+            // the first token of the batch path is the alias, which is not checked
+            paths.forEach(path -> query.setHint("eclipselink.batch", "e." + path));
+            query.setHint("eclipselink.batch.type", "IN");
+            return true;
+        }
+        @Override
+        List<String> attributeNames(Expression<?> expression) {
+            if (expression instanceof Path<?>) {
+                return super.attributeNames(expression);
+            }
+            // the collection-valued path is not a Path, but an expression of the query key
+            try {
+                Object node = expression.getClass().getMethod("getCurrentNode").invoke(expression);
+                Class<?> type = Class.forName("org.eclipse.persistence.internal.expressions.QueryKeyExpression");
+                LinkedList<String> names = new LinkedList<>();
+                for (; type.isInstance(node); node = type.getMethod("getBaseExpression").invoke(node)) {
+                    names.addFirst((String) type.getMethod("getName").invoke(node));
+                }
+                return names;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return List.of();
+            }
+        }
+    },
+
+    /** Other provider. */
+    OTHER(null, null);
+
+
+    /** The provider sessions on which the listener of the transaction completion is registered. */
+    private static final Set<Object> LISTENING = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /** The package prefix of the provider. */
+    private final String packagePrefix;
+
+    /** The hint name of JDBC fetch size. */
+    private final String fetchSizeHint;
+
+
+    Provider(String packagePrefix, String fetchSizeHint) {
+        this.packagePrefix = packagePrefix;
+        this.fetchSizeHint = fetchSizeHint;
+    }
+
+
+    /**
+     * Get the provider of the given {@link EntityManager}.
+     * @param em the {@link EntityManager}
+     * @return the provider
+     */
+    public static Provider of(EntityManager em) {
+        Object delegate = Objects.requireNonNullElse(em.getDelegate(), em);
+        return of(delegate.getClass());
+    }
+
+
+    /**
+     * Get the provider of the given {@link Query}.
+     * @param query the {@link Query}
+     * @return the provider
+     */
+    static Provider of(Query query) {
+        return of(query.getClass());
+    }
+
+
+    /**
+     * Get the provider of the given {@link Expression}.
+     * @param expression the {@link Expression}
+     * @return the provider
+     */
+    static Provider of(Expression<?> expression) {
+        return of(expression.getClass());
+    }
+
+
+    /**
+     * Create the listener of the given type, which runs the given action on the given methods.
+     * The listener is identical only to itself.
+     */
+    private static Object listener(Class<?> type, Set<String> methods, Runnable action) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                };
+            }
+            if (methods.contains(method.getName())) {
+                action.run();
+            }
+            return null;
+        });
+    }
+
+
+    private static Provider of(Class<?> implementation) {
+        String name = implementation.getName();
+        for (Provider provider : values()) {
+            if (Objects.nonNull(provider.packagePrefix) && name.startsWith(provider.packagePrefix)) {
+                return provider;
+            }
+        }
+        return OTHER;
+    }
+
+
+    /**
+     * Get the hint name of JDBC fetch size.
+     * @return the hint name of JDBC fetch size
+     */
+    public Optional<String> fetchSizeHint() {
+        return Optional.ofNullable(fetchSizeHint);
+    }
+
+
+    /**
+     * Set the JDBC batch size of the given {@link EntityManager}.
+     * If the provider does not support the batch size per {@link EntityManager}, nothing is done.
+     * @param em the {@link EntityManager}
+     * @param batchSize the JDBC batch size. If {@code null}, the default of the persistence unit
+     * @return the previous JDBC batch size
+     */
+    public Integer jdbcBatchSize(EntityManager em, Integer batchSize) {
+        return null;
+    }
+
+
+    /**
+     * Get the entity of the given id from the cache of the provider, without accessing the database.
+     * If the provider does not support the lookup, {@code null} is returned.
+     * @param em the {@link EntityManager}
+     * @param entityClass the class of entity
+     * @param id the id
+     * @param <E> the type of entity
+     * @return the managed entity, or {@code null} if the entity is not cached
+     */
+    public <E> E managed(EntityManager em, Class<E> entityClass, Object id) {
+        return null;
+    }
+
+
+    /**
+     * Get the SQL or the query string of the given executed query.
+     * If the provider does not support it, empty is returned.
+     * @param query the {@link Query}
+     * @return the SQL
+     */
+    public Optional<String> sql(Query query) {
+        return Optional.empty();
+    }
+
+
+    /**
+     * Register the action run after the completion of each transaction of the given {@link EntityManager}.
+     * The action is registered only once for the underlying session of the provider.
+     * @param em the {@link EntityManager}
+     * @param action the action
+     * @return {@code true} if the provider supports the notification, and the action is registered
+     */
+    boolean afterCompletion(EntityManager em, Runnable action) {
+        return false;
+    }
+
+
+    /**
+     * Apply the batch fetch of the given associations to the given query, if the provider supports it.
+     * The associations of all the results are loaded by a query, on the first access to any of them.
+     * @param query the query of the root entity
+     * @param paths the dot-separated attribute paths from the root entity
+     * @return {@code true} if the batch fetch is applied
+     */
+    boolean batchFetch(TypedQuery<?> query, List<String> paths) {
+        return false;
+    }
+
+
+    /**
+     * Add the given subquery, limited to the given number of rows, to the given query as a derived table.
+     * If the provider does not support the subquery in the {@code FROM} clause, empty is returned.
+     * @param query the query
+     * @param subquery the subquery of the given query
+     * @param limit the maximum number of rows of the subquery
+     * @return the root of the derived table
+     */
+    Optional<Root<?>> derivedRoot(CriteriaQuery<?> query, Subquery<?> subquery, int limit) {
+        return Optional.empty();
+    }
+
+
+    /**
+     * Get the attribute names of the given path expression from the root.
+     * @param expression the path expression
+     * @return the attribute names, or empty if the expression is not a path of attributes
+     */
+    List<String> attributeNames(Expression<?> expression) {
+        LinkedList<String> names = new LinkedList<>();
+        for (Expression<?> e = expression; e instanceof Path<?> path && Objects.nonNull(path.getParentPath());
+                e = path.getParentPath()) {
+            Object model = (path instanceof Join<?, ?> join) ? join.getAttribute() : path.getModel();
+            if (!(model instanceof Attribute<?, ?> attribute)) {
+                return List.of();
+            }
+            names.addFirst(attribute.getName());
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * The combinators of {@link Query}, to run independent queries concurrently.
+ * <p>
+ * Each query runs on its own short-lived {@link EntityManager}, as {@link Query#onAsync(EntityManagerFactory, Executor)}.
+ * <pre>
+ *     CompletableFuture&lt;Dashboard&gt; future = Queries.all(emf,
+ *         Querying.of(IssueModel.root()).toList(),
+ *         Querying.of(ProjectModel.root()).count(),
+ *         Dashboard::new);
+ * </pre>
+ * If any of the queries fails, the combined future completes exceptionally with the failure.
+ * @author Naotsugu Kobayashi
+ */
+public final class Queries {
+
+    /** The name of the system property of the number of threads of the default executor. */
+    public static final String DEFAULT_EXECUTOR_THREADS = "com.mammb.code.jpa.fluent.query.executor.threads";
+
+    /** The logger. */
+    private static final System.Logger log = System.getLogger(Queries.class.getName());
+
+
+    private Queries() { }
+
+
+    /**
+     * Get the default executor to run queries asynchronously.
+     * Each query holds an {@link EntityManager} and a JDBC connection while it runs,
+     * so the executor runs the queries on a bounded pool of daemon threads, and queues the rest.
+     * The number of threads is given by the system property {@value #DEFAULT_EXECUTOR_THREADS},
+     * and defaults to the number of available processors, also when the property is not a positive number.
+     * It should not exceed the size of the connection pool.
+     * The executor is created on the first use.
+     * @return the default executor
+     */
+    public static Executor defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+
+    /**
+     * Run the given queries concurrently with the default executor.
+     * @param emf the {@link EntityManagerFactory}
+     * @param queries the queries
+     * @param <T> the type of results
+     * @return the {@link CompletableFuture} of the results, in the order of the queries
+     */
+    public static <T> CompletableFuture<List<T>> all(
+            EntityManagerFactory emf, List<? extends Query<? extends T>> queries) {
+        return all(emf, defaultExecutor(), queries);
+    }
+
+
+    /**
+     * Run the given queries concurrently.
+     * @param emf the {@link EntityManagerFactory}
+     * @param executor the {@link Executor} to run the queries
+     * @param queries the queries
+     * @param <T> the type of results
+     * @return the {@link CompletableFuture} of the results, in the order of the queries
+     */
+    public static <T> CompletableFuture<List<T>> all(
+            EntityManagerFactory emf, Executor executor, List<? extends Query<? extends T>> queries) {
+        List<CompletableFuture<? extends T>> futures = queries.stream()
+            .<CompletableFuture<? extends T>>map(query -> query.onAsync(emf, executor))
+            .toList();
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+            .thenApply(v -> futures.stream().<T>map(CompletableFuture::join).toList());
+    }
+
+
+    /**
+     * Run the given two queries concurrently with the default executor, and combine the results.
+     * @param emf the {@link EntityManagerFactory}
+     * @param query1 the first query
+     * @param query2 the second query
+     * @param combiner the function to combine the results
+     * @param <T1> the type of the first result
+     * @param <T2> the type of the second result
+     * @param <R> the type of combined result
+     * @return the {@link CompletableFuture} of the combined result
+     */
+    public static <T1, T2, R> CompletableFuture<R> all(EntityManagerFactory emf,
+            Query<T1> query1, Query<T2> query2,
+            BiFunction<? super T1, ? super T2, ? extends R> combiner) {
+        return all(emf, defaultExecutor(), query1, query2, combiner);
+    }
+
+
+    /**
+     * Run the given two queries concurrently, and combine the results.
+     * @param emf the {@link EntityManagerFactory}
+     * @param executor the {@link Executor} to run the queries
+     * @param query1 the first query
+     * @param query2 the second query
+     * @param combiner the function to combine the results
+     * @param <T1> the type of the first result
+     * @param <T2> the type of the second result
+     * @param <R> the type of combined result
+     * @return the {@link CompletableFuture} of the combined result
+     */
+    public static <T1, T2, R> CompletableFuture<R> all(EntityManagerFactory emf, Executor executor,
+            Query<T1> query1, Query<T2> query2,
+            BiFunction<? super T1, ? super T2, ? extends R> combiner) {
+        Objects.requireNonNull(combiner);
+        CompletableFuture<T1> f1 = query1.onAsync(emf, executor);
+        CompletableFuture<T2> f2 = query2.onAsync(emf, executor);
+        return CompletableFuture.allOf(f1, f2)
+            .thenApply(v -> combiner.apply(f1.join(), f2.join()));
+    }
+
+
+    /**
+     * Run the given three queries concurrently with the default executor, and combine the results.
+     * @param emf the {@link EntityManagerFactory}
+     * @param query1 the first query
+     * @param query2 the second query
+     * @param query3 the third query
+     * @param combiner the function to combine the results
+     * @param <T1> the type of the first result
+     * @param <T2> the type of the second result
+     * @param <T3> the type of the third result
+     * @param <R> the type of combined result
+     * @return the {@link CompletableFuture} of the combined result
+     */
+    public static <T1, T2, T3, R> CompletableFuture<R> all(EntityManagerFactory emf,
+            Query<T1> query1, Query<T2> query2, Query<T3> query3,
+            Combiner3<? super T1, ? super T2, ? super T3, ? extends R> combiner) {
+        return all(emf, defaultExecutor(), query1, query2, query3, combiner);
+    }
+
+
+    /**
+     * Run the given three queries concurrently, and combine the results.
+     * @param emf the {@link EntityManagerFactory}
+     * @param executor the {@link Executor} to run the queries
+     * @param query1 the first query
+     * @param query2 the second query
+     * @param query3 the third query
+     * @param combiner the function to combine the results
+     * @param <T1> the type of the first result
+     * @param <T2> the type of the second result
+     * @param <T3> the type of the third result
+     * @param <R> the type of combined result
+     * @return the {@link CompletableFuture} of the combined result
+     */
+    public static <T1, T2, T3, R> CompletableFuture<R> all(EntityManagerFactory emf, Executor executor,
+            Query<T1> query1, Query<T2> query2, Query<T3> query3,
+            Combiner3<? super T1, ? super T2, ? super T3, ? extends R> combiner) {
+        Objects.requireNonNull(combiner);
+        CompletableFuture<T1> f1 = query1.onAsync(emf, executor);
+        CompletableFuture<T2> f2 = query2.onAsync(emf, executor);
+        CompletableFuture<T3> f3 = query3.onAsync(emf, executor);
+        return CompletableFuture.allOf(f1, f2, f3)
+            .thenApply(v -> combiner.apply(f1.join(), f2.join(), f3.join()));
+    }
+
+
+    /**
+     * Get the number of threads of the default executor from the value of the system property.
+     * @param value the value of the system property, or {@code null}
+     * @return the number of threads, or the number of available processors if the value is not a positive number
+     */
+    static int threads(String value) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (Objects.isNull(value)) {
+            return processors;
+        }
+        try {
+            int threads = Integer.parseInt(value.trim());
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException ignore) {
+            // fall through
+        }
+        log.log(System.Logger.Level.WARNING, "Invalid {0}: {1}. The default executor uses {2} threads.",
+            DEFAULT_EXECUTOR_THREADS, value, processors);
+        return processors;
+    }
+
+
+    /**
+     * Create the executor which runs the tasks on the given number of threads at most.
+     * The idle threads are terminated after a minute.
+     * @param threads the maximum number of threads
+     * @return the executor
+     */
+    static ExecutorService createDefaultExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive. " + threads);
+        }
+        var executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "jpa-fluent-query-async");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    /** The holder of the default executor, created on the first use. */
+    private static final class DefaultExecutor {
+        private static final Executor INSTANCE = createDefaultExecutor(threads(System.getProperty(DEFAULT_EXECUTOR_THREADS)));
+    }
+
+
+    /**
+     * The function to combine three results.
+     * @param <T1> the type of the first result
+     * @param <T2> the type of the second result
+     * @param <T3> the type of the third result
+     * @param <R> the type of combined result
+     */
+    @FunctionalInterface
+    public interface Combiner3<T1, T2, T3, R> {
+
+        /**
+         * Combine the results.
+         * @param t1 the first result
+         * @param t2 the second result
+         * @param t3 the third result
+         * @return the combined result
+         */
+        R apply(T1 t1, T2 t2, T3 t3);
+    }
+
+}
@@ -16,6 +16,9 @@
 package com.mammb.code.jpa.fluent.query;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Executable query on given {@link EntityManager}.
@@ -33,4 +36,38 @@ public interface Query<R> {
      */
     R on(EntityManager em);
 
+
+    /**
+     * Run query asynchronously on a new {@link EntityManager} of the given {@link EntityManagerFactory},
+     * with the default executor of {@link Queries#defaultExecutor()}.
+     * @param emf the {@link EntityManagerFactory}
+     * @return the {@link CompletableFuture} of the result of query
+     * @see #onAsync(EntityManagerFactory, Executor)
+     */
+    default CompletableFuture<R> onAsync(EntityManagerFactory emf) {
+        return onAsync(emf, Queries.defaultExecutor());
+    }
+
+
+    /**
+     * Run query asynchronously on a new {@link EntityManager} of the given {@link EntityManagerFactory}.
+     * The {@link EntityManager} is closed when the query completes, so the results read lazily,
+     * such as {@code toStream()} and {@code toIterable()}, can not be used,
+     * and the entities in the result are detached.
+     * The changes not committed in other {@link EntityManager}s are not visible to the query.
+     * @param emf the {@link EntityManagerFactory}
+     * @param executor the {@link Executor} to run the query
+     * @return the {@link CompletableFuture} of the result of query
+     */
+    default CompletableFuture<R> onAsync(EntityManagerFactory emf, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            EntityManager em = emf.createEntityManager();
+            try {
+                return on(em);
+            } finally {
+                em.close();
+            }
+        }, executor);
+    }
+
 }
@@ -19,16 +19,36 @@ import com.mammb.code.jpa.fluent.core.RootAware;
 import com.mammb.code.jpa.fluent.core.RootSource;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaDelete;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.From;
 import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
 import jakarta.persistence.criteria.Subquery;
 import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.PluralAttribute;
 import jakarta.persistence.metamodel.SingularAttribute;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Helper for building query.
@@ -49,18 +69,77 @@ public interface QueryBuilder {
      */
     static <E, R extends RootAware<E>> TypedQuery<Long> countQuery(
             EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter, Hints hints) {
-        try {
-            CriteriaBuilder cb = QueryContext.put(em.getCriteriaBuilder());
-            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-            R root = rootSource.root(cq.from(rootSource.rootClass()), cq, cb);
+        long start = System.nanoTime();
+        CriteriaQuery<Long> cq = countCriteriaQuery(em.getCriteriaBuilder(), rootSource, filter);
+        TypedQuery<Long> typedQuery = QueryTrace.createQuery(em, cq, start, true, rootSource, filter);
+        hints.apply(typedQuery);
+        return typedQuery;
+    }
+
+
+    /**
+     * Create a count criteria query.
+     * @param cb {@link CriteriaBuilder}
+     * @param rootSource {@link RootSource}
+     * @param filter {@link Filter}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return a count criteria query
+     */
+    static <E, R extends RootAware<E>> CriteriaQuery<Long> countCriteriaQuery(
+            CriteriaBuilder cb, RootSource<E, R> rootSource, Filter<E, R> filter) {
+        return countCriteriaQuery(cb, rootSource, filter, new ArrayList<>());
+    }
+
+
+    /**
+     * Create a count criteria query, and collect the entity types the query touches.
+     * The entity types are collected from the roots, the joins and the fetches of the query and its subqueries.
+     * @param cb {@link CriteriaBuilder}
+     * @param rootSource {@link RootSource}
+     * @param filter {@link Filter}
+     * @param entities the set into which the entity types are added
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return a count criteria query
+     */
+    static <E, R extends RootAware<E>> CriteriaQuery<Long> countCriteriaQuery(
+            CriteriaBuilder cb, RootSource<E, R> rootSource, Filter<E, R> filter, Set<Class<?>> entities) {
+        List<From<?, ?>> froms = new ArrayList<>();
+        CriteriaQuery<Long> cq = countCriteriaQuery(cb, rootSource, filter, froms);
+        froms.addAll(cq.getRoots());
+        entityTypes(froms, entities);
+        return cq;
+    }
+
+
+    /**
+     * Get the entity types the count query touches.
+     * @param cb {@link CriteriaBuilder}
+     * @param rootSource {@link RootSource}
+     * @param filter {@link Filter}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return the entity types
+     */
+    static <E, R extends RootAware<E>> Set<Class<?>> entityTypes(
+            CriteriaBuilder cb, RootSource<E, R> rootSource, Filter<E, R> filter) {
+        Set<Class<?>> entities = new HashSet<>();
+        countCriteriaQuery(cb, rootSource, filter, entities);
+        return entities;
+    }
+
+
+    private static <E, R extends RootAware<E>> CriteriaQuery<Long> countCriteriaQuery(
+            CriteriaBuilder cb, RootSource<E, R> rootSource, Filter<E, R> filter, Collection<From<?, ?>> froms) {
+        try (var scope = QueryContext.open(cb)) {
+            scope.collect(froms);
+            CriteriaQuery<Long> cq = scope.put(cb.createQuery(Long.class));
+            R root = rootSource.root(scope.put(cq.from(rootSource.rootClass())), cq, cb);
             cq.select(cq.isDistinct() ? cb.countDistinct(root.get()) : cb.count(root.get()));
             Optional.ofNullable(filter.apply(root)).ifPresent(cq::where);
             cq.orderBy(List.of());
-            TypedQuery<Long> typedQuery = em.createQuery(cq);
-            hints.apply(typedQuery);
-            return typedQuery;
-        } finally {
-            QueryContext.close();
+            return cq;
         }
     }
 
@@ -85,9 +164,80 @@ public interface QueryBuilder {
             Filter<E, R> filter,
             Sorts<E, R> sorts,
             Hints hints) {
+        long start = System.nanoTime();
+        CriteriaQuery<U> cq = criteriaQuery(em.getCriteriaBuilder(), rootSource, mapper, filter, sorts);
+        TypedQuery<U> typedQuery = QueryTrace.createQuery(em, cq, start, false, rootSource, mapper, filter, sorts);
+        hints.apply(typedQuery);
+        if (mapper instanceof FetchMapper<E, R, U> fetchMapper) {
+            // the collections are loaded after the results are read
+            typedQuery = fetchMapper.wrap(em, rootSource, cq, typedQuery);
+        }
+        return typedQuery;
+    }
 
-        try {
-            CriteriaBuilder cb = QueryContext.put(em.getCriteriaBuilder());
+
+    /**
+     * Create a criteria query.
+     * @param cb {@link CriteriaBuilder}
+     * @param rootSource {@link RootSource}
+     * @param mapper {@link Mapper}
+     * @param filter {@link Filter}
+     * @param sorts {@link Sorts}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result value
+     * @return a criteria query
+     */
+    static <E, R extends RootAware<E>, U> CriteriaQuery<U> criteriaQuery(
+            CriteriaBuilder cb,
+            RootSource<E, R> rootSource,
+            Mapper<E, R, U> mapper,
+            Filter<E, R> filter,
+            Sorts<E, R> sorts) {
+        return criteriaQuery(cb, rootSource, mapper, filter, sorts, new ArrayList<>());
+    }
+
+
+    /**
+     * Create a criteria query, and collect the entity types the query touches.
+     * The entity types are collected from the roots, the joins and the fetches of the query and its subqueries.
+     * @param cb {@link CriteriaBuilder}
+     * @param rootSource {@link RootSource}
+     * @param mapper {@link Mapper}
+     * @param filter {@link Filter}
+     * @param sorts {@link Sorts}
+     * @param entities the set into which the entity types are added
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result value
+     * @return a criteria query
+     */
+    static <E, R extends RootAware<E>, U> CriteriaQuery<U> criteriaQuery(
+            CriteriaBuilder cb,
+            RootSource<E, R> rootSource,
+            Mapper<E, R, U> mapper,
+            Filter<E, R> filter,
+            Sorts<E, R> sorts,
+            Set<Class<?>> entities) {
+
+        List<From<?, ?>> froms = new ArrayList<>();
+        CriteriaQuery<U> cq = criteriaQuery(cb, rootSource, mapper, filter, sorts, froms);
+        froms.addAll(cq.getRoots());
+        entityTypes(froms, entities);
+        return cq;
+    }
+
+
+    private static <E, R extends RootAware<E>, U> CriteriaQuery<U> criteriaQuery(
+            CriteriaBuilder cb,
+            RootSource<E, R> rootSource,
+            Mapper<E, R, U> mapper,
+            Filter<E, R> filter,
+            Sorts<E, R> sorts,
+            Collection<From<?, ?>> froms) {
+
+        try (var scope = QueryContext.open(cb)) {
+            scope.collect(froms);
             R root = mapper.apply(rootSource, cb);
             @SuppressWarnings("unchecked")
             CriteriaQuery<U> cq = (CriteriaQuery<U>) QueryContext.query();
@@ -102,11 +252,104 @@ public interface QueryBuilder {
                     .map(name -> cb.asc(root.get().get(name))).toList());
             }
             cq.orderBy(orders);
-            TypedQuery<U> typedQuery = em.createQuery(cq);
-            hints.apply(typedQuery);
-            return typedQuery;
-        } finally {
-            QueryContext.close();
+            mapper.complete(cq);
+            return cq;
+        }
+    }
+
+
+    private static void entityTypes(Collection<? extends From<?, ?>> froms, Set<Class<?>> entities) {
+        for (From<?, ?> from : froms) {
+            if (from.getJavaType().isAnnotationPresent(Entity.class)) {
+                entities.add(from.getJavaType());
+            }
+            entityTypes(from.getJoins(), entities);
+            fetchedTypes(from.getFetches(), entities);
+        }
+    }
+
+
+    private static void fetchedTypes(Collection<? extends Fetch<?, ?>> fetches, Set<Class<?>> entities) {
+        for (Fetch<?, ?> fetch : fetches) {
+            Class<?> type = (fetch.getAttribute() instanceof PluralAttribute<?, ?, ?> plural)
+                ? plural.getElementType().getJavaType()
+                : fetch.getAttribute().getJavaType();
+            if (type.isAnnotationPresent(Entity.class)) {
+                entities.add(type);
+            }
+            fetchedTypes(fetch.getFetches(), entities);
+        }
+    }
+
+
+    /**
+     * Execute the bulk delete.
+     * @param em {@link EntityManager}
+     * @param rootSource {@link RootSource}
+     * @param filter {@link Filter}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return the number of entities deleted
+     */
+    static <E, R extends RootAware<E>> int delete(
+            EntityManager em, RootSource<E, R> rootSource, Filter<E, R> filter) {
+        long start = System.nanoTime();
+        int count = QueryTrace.createQuery(em, deleteCriteria(em.getCriteriaBuilder(), rootSource, filter), start,
+            rootSource, filter).executeUpdate();
+        CacheInvalidator.invalidate(em, rootSource.rootClass());
+        return count;
+    }
+
+
+    /**
+     * Find the entity by the given id.
+     * The lookup is reported to the {@link QueryListener}s like the queries.
+     * @param em {@link EntityManager}
+     * @param entityClass the class of entity
+     * @param id the id
+     * @param <E> the type of entity
+     * @return the entity found, or {@code null} if not found
+     */
+    static <E> E find(EntityManager em, Class<E> entityClass, Object id) {
+        return QueryTrace.find(em, entityClass, id);
+    }
+
+
+    /**
+     * Find the entities of the given ids by a single {@code IN} query.
+     * @param em {@link EntityManager}
+     * @param entityClass the class of entity
+     * @param idName the name of the id attribute
+     * @param ids the ids
+     * @param <E> the type of entity
+     * @return the entities found
+     */
+    static <E> List<E> findByIds(EntityManager em, Class<E> entityClass, String idName, Collection<?> ids) {
+        long start = System.nanoTime();
+        CriteriaQuery<E> cq = em.getCriteriaBuilder().createQuery(entityClass);
+        Root<E> root = cq.from(entityClass);
+        cq.where(root.get(idName).in(ids.toArray()));
+        return QueryTrace.createQuery(em, cq, start, false, entityClass, idName, ids.size()).getResultList();
+    }
+
+
+    /**
+     * Create a criteria delete.
+     * @param cb {@link CriteriaBuilder}
+     * @param rootSource {@link RootSource}
+     * @param filter {@link Filter}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return a criteria delete
+     */
+    static <E, R extends RootAware<E>> CriteriaDelete<E> deleteCriteria(
+            CriteriaBuilder cb, RootSource<E, R> rootSource, Filter<E, R> filter) {
+        try (var scope = QueryContext.open(cb)) {
+            CriteriaDelete<E> cd = scope.put(cb.createCriteriaDelete(rootSource.rootClass()));
+            // CriteriaDelete is not an AbstractQuery, subqueries are created via the QueryContext
+            R root = rootSource.root(scope.put(cd.from(rootSource.rootClass())), null, cb);
+            Optional.ofNullable(filter.apply(root)).ifPresent(cd::where);
+            return cd;
         }
     }
 
@@ -172,6 +415,27 @@ public interface QueryBuilder {
     }
 
 
+    /**
+     * Get the keyset slice of entity.
+     * @param em {@link EntityManager}
+     * @param rootSource {@link RootSource}
+     * @param mapper {@link Mapper}
+     * @param filter {@link Filter}
+     * @param sorts {@link Sorts}
+     * @param keysetPoint  {@link KeysetPoint}
+     * @param hints {@link Hints}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result value
+     * @return a keyset slice
+     */
+    static <E, R extends RootAware<E>, U> KeysetSlice<U> slice(
+            EntityManager em, RootSource<E, R> rootSource, Mapper<E, R, U> mapper,
+            Filter<E, R> filter, Sorts<E, R> sorts, KeysetPoint keysetPoint, Hints hints) {
+        return Keyset.of(em, rootSource, mapper, filter, sorts, hints).slice(keysetPoint);
+    }
+
+
     /**
      * Get the page of entity.
      * @param em {@link EntityManager}
@@ -189,17 +453,161 @@ public interface QueryBuilder {
     static <E, R extends RootAware<E>, U> Page<U> page(
             EntityManager em, RootSource<E, R> rootSource, Mapper<E, R, U> mapper,
             Filter<E, R> filter, Sorts<E, R> sorts, SlicePoint slicePoint, Hints hints) {
+        return page(em, rootSource, mapper, filter, sorts, slicePoint, hints, CountStrategy.exact());
+    }
 
-        var count = countQuery(em, rootSource, filter, Hints.empty()).getSingleResult();
-        if (count <= slicePoint.getOffset()) {
-            return Page.of(List.of(), count, slicePoint);
-        }
 
+    /**
+     * Get the page of entity.
+     * @param em {@link EntityManager}
+     * @param rootSource {@link RootSource}
+     * @param mapper {@link Mapper}
+     * @param filter {@link Filter}
+     * @param sorts {@link Sorts}
+     * @param slicePoint  {@link SlicePoint}
+     * @param hints {@link Hints}
+     * @param countStrategy {@link CountStrategy}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result value
+     * @return a page
+     */
+    static <E, R extends RootAware<E>, U> Page<U> page(
+            EntityManager em, RootSource<E, R> rootSource, Mapper<E, R, U> mapper,
+            Filter<E, R> filter, Sorts<E, R> sorts, SlicePoint slicePoint, Hints hints, CountStrategy countStrategy) {
         var query = QueryBuilder.query(em, rootSource, mapper, filter, sorts, hints);
+        return countedPage(query, () -> countStrategy.count(em, rootSource, filter), slicePoint);
+    }
+
+
+    /**
+     * Get the page of entity.
+     * The count query is submitted to the executor before the content is read, and is executed concurrently
+     * on another {@link EntityManager} created from the same factory,
+     * so the changes not committed in the given {@link EntityManager} are not counted.
+     * If the total is derived from the content, the count not yet started is skipped,
+     * but the count already started runs to the end in the background.
+     * If the count is needed but not yet started, e.g. the executor is saturated by the pages waiting for
+     * their counts, it is executed on the calling thread instead of waiting for the executor,
+     * and so is it if the executor rejects the count.
+     * @param em {@link EntityManager}
+     * @param rootSource {@link RootSource}
+     * @param mapper {@link Mapper}
+     * @param filter {@link Filter}
+     * @param sorts {@link Sorts}
+     * @param slicePoint  {@link SlicePoint}
+     * @param hints {@link Hints}
+     * @param executor the {@link Executor} to execute the count query
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> the type of result value
+     * @return a page
+     */
+    static <E, R extends RootAware<E>, U> Page<U> page(
+            EntityManager em, RootSource<E, R> rootSource, Mapper<E, R, U> mapper,
+            Filter<E, R> filter, Sorts<E, R> sorts, SlicePoint slicePoint, Hints hints, Executor executor) {
+
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        Supplier<Long> counter = () -> {
+            EntityManager countEm = emf.createEntityManager();
+            try {
+                return countQuery(countEm, rootSource, filter, Hints.empty()).getSingleResult();
+            } finally {
+                countEm.close();
+            }
+        };
+        // the count is run by either the executor or the calling thread, whichever claims it first
+        AtomicBoolean claimed = new AtomicBoolean();
+        CompletableFuture<Long> count;
+        try {
+            count = CompletableFuture.supplyAsync(
+                () -> claimed.compareAndSet(false, true) ? counter.get() : null, executor);
+        } catch (RejectedExecutionException e) {
+            count = CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Long> future = count;
+
+        try {
+            var query = QueryBuilder.query(em, rootSource, mapper, filter, sorts, hints);
+            return page(query, () -> {
+                if (claimed.compareAndSet(false, true)) {
+                    // not started, so the executor may be occupied by the callers waiting for their counts
+                    return counter.get();
+                }
+                try {
+                    return future.join();
+                } catch (CompletionException e) {
+                    throw (e.getCause() instanceof RuntimeException re) ? re : e;
+                }
+            }, slicePoint);
+        } finally {
+            // skips the count not yet started, the running count is not interrupted
+            claimed.set(true);
+            future.cancel(false);
+        }
+    }
+
+
+    /**
+     * Get the page of entity for given conditions.
+     * The content is read first, and the count is skipped if the total can be derived from the content,
+     * i.e. the content is fewer than the size of page.
+     * @param query The {@link TypedQuery}
+     * @param count The supplier of the total amount of elements
+     * @param slicePoint The {@link SlicePoint}
+     * @param <U> The type of query result
+     * @return the {@link Page}
+     */
+    static <U> Page<U> page(TypedQuery<U> query, Supplier<Long> count, SlicePoint slicePoint) {
+        return countedPage(query, () -> CountStrategy.Count.exact(count.get()), slicePoint);
+    }
+
+
+    private static <U> Page<U> countedPage(TypedQuery<U> query, Supplier<CountStrategy.Count> count,
+            SlicePoint slicePoint) {
         query.setFirstResult(Math.toIntExact(slicePoint.getOffset()));
         query.setMaxResults(slicePoint.getSize());
         List<U> result = query.getResultList();
-        return Page.of(result, count, slicePoint);
+        if (result.isEmpty() ? slicePoint.getOffset() == 0 : result.size() < slicePoint.getSize()) {
+            return Page.of(result, slicePoint.getOffset() + result.size(), slicePoint);
+        }
+        CountStrategy.Count total = count.get();
+        return total.exact()
+            ? Page.of(result, total.value(), slicePoint)
+            : Page.of(result, Math.max(total.value(), slicePoint.getOffset() + result.size()), false, slicePoint);
+    }
+
+
+    /**
+     * Get the {@link Stream} which reads the result of given query by cursor.
+     * The result set is closed when the {@link Stream} is closed.
+     * @param em {@link EntityManager}
+     * @param query the {@link TypedQuery}
+     * @param fetchSize the JDBC fetch size
+     * @param <U> the type of result value
+     * @return the {@link Stream}
+     */
+    static <U> Stream<U> cursorStream(EntityManager em, TypedQuery<U> query, int fetchSize) {
+        FetchMapper.rejectCollections(query);
+        Provider provider = Provider.of(em);
+        provider.fetchSizeHint().ifPresent(hint -> query.setHint(hint, fetchSize));
+        if (provider != Provider.ECLIPSELINK) {
+            return query.getResultStream();
+        }
+        // EclipseLink does not stream getResultStream(), so read by the cursor
+        query.setHint("eclipselink.cursor", true);
+        query.setHint("eclipselink.cursor.page-size", fetchSize);
+        Object cursor = query.getSingleResult();
+        @SuppressWarnings("unchecked")
+        Iterator<U> iterator = (Iterator<U>) cursor;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+            .onClose(() -> {
+                try {
+                    cursor.getClass().getMethod("close").invoke(cursor);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
     }
 
 
@@ -15,33 +15,77 @@
  */
 package com.mammb.code.jpa.fluent.query;
 
+import jakarta.persistence.criteria.CommonAbstractCriteria;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.From;
 import jakarta.persistence.criteria.Root;
+import java.util.Collection;
 import java.util.Objects;
 
 /**
  * QueryContext.
  * Used to propagate context to subqueries.
+ * <p>
+ * The context is opened as a {@link Scope} while a query is built, and is discarded when the scope is closed.
+ * Scopes can be nested, e.g. a query built while building another query,
+ * and the enclosing context is restored when the nested scope is closed.
+ * No state is retained on the thread after the outermost scope is closed.
+ * <pre>
+ *     try (var scope = QueryContext.open(cb)) {
+ *         CriteriaQuery<Issue> cq = scope.put(cb.createQuery(Issue.class));
+ *         ...
+ *     }
+ * </pre>
  * @author Naotsugu Kobayashi
  */
 public interface QueryContext {
 
-    /** The context holder. */
+    /**
+     * The context holder.
+     * @deprecated the context is held by the {@link Scope} opened by {@link #open(CriteriaBuilder)},
+     *     and this holder is no longer used
+     */
+    @Deprecated(since = "0.10.0", forRemoval = true)
     ThreadLocal<QueryContext> threadLocal = ThreadLocal.withInitial(QueryContextImpl::new);
 
 
+    /**
+     * Open a new context with the given {@link CriteriaBuilder}.
+     * @param builder the {@link CriteriaBuilder}
+     * @return the {@link Scope} of the context, to be closed after the query is built
+     */
+    static Scope open(CriteriaBuilder builder) {
+        return Scope.open(Objects.requireNonNull(builder));
+    }
+
+
     /**
      * Put the {@link CriteriaBuilder} to this context.
+     * A context is opened if the current context is not the one opened by this method,
+     * and is closed by {@link #close()}.
      * @param builder the {@link CriteriaBuilder} to be put
      * @return a current {@link CriteriaBuilder}
+     * @deprecated use {@link #open(CriteriaBuilder)} with try-with-resources
      */
+    @Deprecated(since = "0.10.0", forRemoval = true)
     static CriteriaBuilder put(CriteriaBuilder builder) {
-        ((QueryContextImpl) threadLocal.get()).builder = Objects.requireNonNull(builder);
+        Scope.openLegacy(Objects.requireNonNull(builder));
         return builder;
     }
 
 
+    /**
+     * Close the current context opened by {@link #put(CriteriaBuilder)}.
+     * The context opened by {@link #open(CriteriaBuilder)} is not affected.
+     * @deprecated close the {@link Scope} returned by {@link #open(CriteriaBuilder)}
+     */
+    @Deprecated(since = "0.10.0", forRemoval = true)
+    static void close() {
+        Scope.closeLegacy();
+    }
+
+
     /**
      * Put the {@link CriteriaQuery} to this context.
      * @param query the {@link CriteriaQuery} to be put
@@ -49,8 +93,19 @@ public interface QueryContext {
      * @return a current {@link CriteriaQuery}
      */
     static <E> CriteriaQuery<E> put(CriteriaQuery<E> query) {
-        ((QueryContextImpl) threadLocal.get()).query = Objects.requireNonNull(query);
-        return query;
+        return Scope.current().put(query);
+    }
+
+
+    /**
+     * Put the {@link CommonAbstractCriteria} to this context.
+     * Used for the {@code CriteriaUpdate} and the {@code CriteriaDelete}.
+     * @param criteria the {@link CommonAbstractCriteria} to be put
+     * @param <C> the type of criteria
+     * @return a current {@link CommonAbstractCriteria}
+     */
+    static <C extends CommonAbstractCriteria> C put(C criteria) {
+        return Scope.current().put(criteria);
     }
 
 
@@ -61,8 +116,32 @@ public interface QueryContext {
      * @return a current {@link Root}
      */
     static <E> Root<E> put(Root<E> root) {
-        ((QueryContextImpl) threadLocal.get()).root = Objects.requireNonNull(root);
-        return root;
+        return Scope.current().put(root);
+    }
+
+
+    /**
+     * Collect the {@link From} of subqueries created on current context into the given collection,
+     * until the context is closed.
+     * @param froms the collection into which the {@link From} is added
+     */
+    static void collect(Collection<From<?, ?>> froms) {
+        Scope.current().collect(froms);
+    }
+
+
+    /**
+     * Put the {@link From} of a subquery to this context.
+     * @param from the {@link From} to be put
+     * @param <F> the type of {@link From}
+     * @return a given {@link From}
+     */
+    static <F extends From<?, ?>> F from(F from) {
+        var scope = Scope.current();
+        if (Objects.nonNull(scope.froms)) {
+            scope.froms.add(Objects.requireNonNull(from));
+        }
+        return from;
     }
 
 
@@ -71,7 +150,7 @@ public interface QueryContext {
      * @return a {@link CriteriaBuilder} on current context
      */
     static CriteriaBuilder builder() {
-        return Objects.requireNonNull(((QueryContextImpl) threadLocal.get()).builder);
+        return Scope.current().builder;
     }
 
 
@@ -80,7 +159,16 @@ public interface QueryContext {
      * @return a {@link CriteriaQuery} on current context
      */
     static CriteriaQuery<?> query() {
-        return Objects.requireNonNull(((QueryContextImpl) threadLocal.get()).query);
+        return (CriteriaQuery<?>) criteria();
+    }
+
+
+    /**
+     * Get a {@link CommonAbstractCriteria} on current context.
+     * @return a {@link CommonAbstractCriteria} on current context
+     */
+    static CommonAbstractCriteria criteria() {
+        return Objects.requireNonNull(Scope.current().query, "No criteria in the query context.");
     }
 
 
@@ -91,27 +179,146 @@ public interface QueryContext {
      */
     @SuppressWarnings("unchecked")
     static <E> Root<E> root() {
-        return Objects.requireNonNull((Root<E>) ((QueryContextImpl) threadLocal.get()).root);
+        return Objects.requireNonNull((Root<E>) Scope.current().root, "No root in the query context.");
     }
 
 
     /**
-     * Close the current context.
+     * The scope of the query context.
+     * The scope is confined to the thread which opened it, and must be closed in the reverse order of opening.
      */
-    static void close() {
-        var context = (QueryContextImpl) threadLocal.get();
-        context.builder = null;
-        context.query = null;
+    final class Scope implements AutoCloseable {
+
+        /** The innermost scope of the thread, present only while a query is built. */
+        private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+        /** The {@link CriteriaBuilder}. */
+        private CriteriaBuilder builder;
+
+        /** The enclosing scope. */
+        private final Scope enclosing;
+
+        /** The current criteria. */
+        private CommonAbstractCriteria query;
+
+        /** The current root. */
+        private Root<?> root;
+
+        /** The collection of the {@link From} of subqueries. */
+        private Collection<From<?, ?>> froms;
+
+        /** Whether this scope is opened by the deprecated {@link QueryContext#put(CriteriaBuilder)}. */
+        private boolean legacy;
+
+
+        private Scope(CriteriaBuilder builder, Scope enclosing) {
+            this.builder = builder;
+            this.enclosing = enclosing;
+        }
+
+
+        /**
+         * Put the {@link CriteriaQuery} to this scope.
+         * @param query the {@link CriteriaQuery} to be put
+         * @param <E> the type of the query result
+         * @return the given {@link CriteriaQuery}
+         */
+        public <E> CriteriaQuery<E> put(CriteriaQuery<E> query) {
+            this.query = Objects.requireNonNull(query);
+            return query;
+        }
+
+
+        /**
+         * Put the {@link CommonAbstractCriteria} to this scope.
+         * @param criteria the {@link CommonAbstractCriteria} to be put
+         * @param <C> the type of criteria
+         * @return the given {@link CommonAbstractCriteria}
+         */
+        public <C extends CommonAbstractCriteria> C put(C criteria) {
+            this.query = Objects.requireNonNull(criteria);
+            return criteria;
+        }
+
+
+        /**
+         * Put the {@link Root} to this scope.
+         * @param root the {@link Root} to be put
+         * @param <E> the type of entity root
+         * @return the given {@link Root}
+         */
+        public <E> Root<E> put(Root<E> root) {
+            this.root = Objects.requireNonNull(root);
+            return root;
+        }
+
+
+        /**
+         * Collect the {@link From} of subqueries created on this scope into the given collection.
+         * @param froms the collection into which the {@link From} is added
+         */
+        public void collect(Collection<From<?, ?>> froms) {
+            this.froms = Objects.requireNonNull(froms);
+        }
+
+
+        private static Scope open(CriteriaBuilder builder) {
+            var scope = new Scope(builder, CURRENT.get());
+            CURRENT.set(scope);
+            return scope;
+        }
+
+
+        private static void openLegacy(CriteriaBuilder builder) {
+            Scope scope = CURRENT.get();
+            if (Objects.nonNull(scope) && scope.legacy) {
+                scope.builder = builder;
+            } else {
+                open(builder).legacy = true;
+            }
+        }
+
+
+        private static void closeLegacy() {
+            Scope scope = CURRENT.get();
+            if (Objects.nonNull(scope) && scope.legacy) {
+                scope.close();
+            }
+        }
+
+
+        private static Scope current() {
+            Scope scope = CURRENT.get();
+            if (Objects.isNull(scope)) {
+                throw new IllegalStateException("No query context is open.");
+            }
+            return scope;
+        }
+
+
+        /**
+         * Close this scope, and restore the enclosing scope.
+         */
+        @Override
+        public void close() {
+            if (CURRENT.get() != this) {
+                throw new IllegalStateException("The query context is not closed in the reverse order of opening.");
+            }
+            if (Objects.isNull(enclosing)) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(enclosing);
+            }
+        }
     }
 
 
     /**
      * The query context holder.
+     * @deprecated the context is held by the {@link Scope}
      */
+    @Deprecated(since = "0.10.0", forRemoval = true)
     class QueryContextImpl implements QueryContext {
-        private CriteriaBuilder builder;
-        private CriteriaQuery<?> query;
-        private Root<?> root;
         private QueryContextImpl() { }
     }
 
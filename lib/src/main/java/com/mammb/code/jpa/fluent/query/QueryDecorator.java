@@ -16,6 +16,11 @@
 package com.mammb.code.jpa.fluent.query;
 
 import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.metamodel.PluralAttribute;
+import java.util.Collection;
 
 /**
  * QueryDecorator.
@@ -46,4 +51,38 @@ public interface QueryDecorator<U> {
      */
     static <U> QueryDecorator<U> distinct() { return query -> query.distinct(true); }
 
+
+    /**
+     * Create the {@link QueryDecorator} which applies distinct only if the query can produce duplicates,
+     * i.e. the query has multiple roots, or a join or a fetch of a collection.
+     * The decorator is applied after the filter and the sorts are applied to the query.
+     * @param <U> the type of query result
+     * @return the {@link QueryDecorator}
+     */
+    static <U> QueryDecorator<U> distinctIfDuplicable() {
+        return query -> query.distinct(query.getRoots().size() > 1 || hasCollectionJoin(query.getRoots()));
+    }
+
+
+    private static boolean hasCollectionJoin(Collection<? extends From<?, ?>> froms) {
+        for (From<?, ?> from : froms) {
+            if ((from instanceof Join<?, ?> join && join.getAttribute() instanceof PluralAttribute<?, ?, ?>)
+                    || hasCollectionJoin(from.getJoins())
+                    || hasCollectionFetch(from.getFetches())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static boolean hasCollectionFetch(Collection<? extends Fetch<?, ?>> fetches) {
+        for (Fetch<?, ?> fetch : fetches) {
+            if (fetch.getAttribute() instanceof PluralAttribute<?, ?, ?> || hasCollectionFetch(fetch.getFetches())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder event of a query execution.
+ * <p>
+ * The duration of the event is the execution of the query, and the stack trace points to the call site.
+ * The event is committed for each execution, such as each page of a streaming result.
+ * @author Naotsugu Kobayashi
+ */
+@Name("com.mammb.code.jpa.fluent.Query")
+@Label("Fluent Query")
+@Category("JPA Fluent Query")
+@Description("The execution of a query built by jpa-fluent-query")
+final class QueryEvent extends Event {
+
+    /** The class of the query root. */
+    @Label("Root Class")
+    Class<?> rootClass;
+
+    /** The kind of execution. */
+    @Label("Kind")
+    String kind;
+
+    /** The position of the first result. */
+    @Label("First Result")
+    int firstResult;
+
+    /** The maximum number of results, -1 if not limited. */
+    @Label("Max Results")
+    int maxResults;
+
+    /** The number of rows returned, -1 if unknown. */
+    @Label("Rows")
+    long rows;
+
+    /** The shape of the query. */
+    @Label("Fingerprint")
+    @Description("The shape of the query, which is the same for the queries built by the same code")
+    String fingerprint;
+
+    /** The time of building the criteria query. */
+    @Label("Build")
+    @Timespan
+    long build;
+
+    /** The time of creating the query from the criteria query. */
+    @Label("Translate")
+    @Timespan
+    long translate;
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The listener notified on every execution of a query, e.g. to feed a metrics system.
+ * <p>
+ * The listeners are registered as the service provider of this interface,
+ * and loaded by {@link java.util.ServiceLoader} once.
+ * <pre>
+ *     // META-INF/services/com.mammb.code.jpa.fluent.query.QueryListener
+ *     com.example.MetricsQueryListener
+ * </pre>
+ * The listeners can also be registered by {@link #register(QueryListener)}, and unregistered
+ * by {@link #unregister(QueryListener)}.
+ * The listener is called on the thread executing the query, so it should return quickly without throwing.
+ * If no listener is registered, the queries are not instrumented.
+ * @author Naotsugu Kobayashi
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+    /**
+     * Invoked after the query is executed successfully.
+     * @param event the {@link Event} of the execution
+     */
+    void onExecuted(Event event);
+
+
+    /**
+     * Register the given listener.
+     * @param listener the listener
+     */
+    static void register(QueryListener listener) {
+        QueryTrace.register(listener);
+    }
+
+
+    /**
+     * Unregister the given listener.
+     * @param listener the listener
+     */
+    static void unregister(QueryListener listener) {
+        QueryTrace.unregister(listener);
+    }
+
+
+    /**
+     * The kind of query execution.
+     */
+    enum Kind {
+
+        /** The list result, such as {@code toList()}. */
+        LIST,
+
+        /** The single result, such as {@code toSingle()} or {@code toOptional()}. */
+        SINGLE,
+
+        /** The list result limited by the max results, such as a page of {@code toPage()} or {@code toStream()}. */
+        SLICE,
+
+        /** The stream result of {@code toCursorStream()}. */
+        STREAM,
+
+        /** The count of elements, such as {@code count()} or the total of {@code toPage()}. */
+        COUNT,
+
+        /** The bulk update or delete, such as {@code Updating} or {@code deleteAll()}, of which the size is the rows affected. */
+        UPDATE,
+
+        /** The lookup by id of the repository, which may be served from the persistence context. */
+        FIND
+    }
+
+
+    /**
+     * The event of query execution.
+     * <p>
+     * The build is the time to build the criteria query, and the translate is the time of
+     * {@link jakarta.persistence.EntityManager#createQuery(jakarta.persistence.criteria.CriteriaQuery)}.
+     * When the query is executed more than once, like the pages of a stream,
+     * they are reported on the first execution only, and are zero afterwards.
+     * @param rootClass the class of the query root
+     * @param kind the kind of execution
+     * @param build the duration of building the criteria query
+     * @param translate the duration of creating the query from the criteria query
+     * @param execute the duration of executing the query
+     * @param size the number of rows returned, or {@code -1} if unknown as a stream
+     */
+    record Event(Class<?> rootClass, Kind kind, Duration build, Duration translate, Duration execute, long size) {
+
+        /**
+         * Create a new {@link Event}.
+         */
+        public Event {
+            Objects.requireNonNull(kind);
+            Objects.requireNonNull(build);
+            Objects.requireNonNull(translate);
+            Objects.requireNonNull(execute);
+        }
+
+
+        /**
+         * Get the total duration of build, translate and execute.
+         * @return the total duration
+         */
+        public Duration total() {
+            return build.plus(translate).plus(execute);
+        }
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The statistics of query executions, keyed by the shape of the query.
+ * <p>
+ * The executions are aggregated by the root class, the kind of execution and the fingerprint of the query,
+ * which is the same for the queries built by the same code regardless of the captured values.
+ * Each entry keeps the count, the total, the max and the percentiles of the execution time, and the rows.
+ * The percentiles are approximated by a histogram, whose error is less than 25%.
+ * <p>
+ * The executions slower than the threshold are logged with the SQL and the call site,
+ * and the recent ones are kept.
+ * <pre>
+ *     QueryStatistics statistics = QueryStatistics.shared();
+ *     statistics.setSlowQueryThreshold(Duration.ofMillis(500));
+ *     statistics.setEnabled(true);
+ *     QueryStatistics.registerMBean();
+ *     // ...
+ *     List&lt;QueryStatistics.Entry&gt; top = statistics.top(10);
+ * </pre>
+ * The statistics are bounded to 1000 shapes, and the shape with the least total time
+ * is evicted when a new shape is recorded.
+ * @author Naotsugu Kobayashi
+ */
+public final class QueryStatistics implements QueryStatisticsMXBean {
+
+    /** The object name of the MBean. */
+    public static final String OBJECT_NAME = "com.mammb.code.jpa.fluent:type=QueryStatistics";
+
+    /** The maximum number of query shapes. */
+    static final int CAPACITY = 1000;
+
+    /** The maximum number of slow queries kept. */
+    static final int SLOW_QUERY_CAPACITY = 100;
+
+    /** The shared instance. */
+    private static final QueryStatistics SHARED = new QueryStatistics();
+
+    /** The logger. */
+    private static final System.Logger log = System.getLogger(QueryStatistics.class.getName());
+
+    /** The statistics by the shape of query. */
+    private final Map<Key, Stats> entries = new HashMap<>();
+
+    /** The recent slow queries. */
+    private final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>();
+
+    /** Whether the statistics are collected. */
+    private volatile boolean enabled;
+
+    /** The threshold of the slow query in nanoseconds. */
+    private volatile long slowQueryThresholdNanos = Duration.ofSeconds(1).toNanos();
+
+    /** The number of executions. */
+    private long executionCount;
+
+
+    private QueryStatistics() { }
+
+
+    /**
+     * Get the shared {@link QueryStatistics}.
+     * @return the shared {@link QueryStatistics}
+     */
+    public static QueryStatistics shared() {
+        return SHARED;
+    }
+
+
+    /**
+     * Register the shared {@link QueryStatistics} to the platform MBean server as {@value #OBJECT_NAME}.
+     * If it is already registered, nothing is done.
+     */
+    public static void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(SHARED, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ignore) {
+            // already registered
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * Get the threshold of the slow query.
+     * @return the threshold of the slow query
+     */
+    public Duration getSlowQueryThreshold() {
+        return Duration.ofNanos(slowQueryThresholdNanos);
+    }
+
+
+    /**
+     * Set the threshold of the slow query. The default is one second.
+     * @param threshold the threshold of the slow query
+     */
+    public void setSlowQueryThreshold(Duration threshold) {
+        if (threshold.isNegative()) {
+            throw new IllegalArgumentException("threshold must not be negative. " + threshold);
+        }
+        this.slowQueryThresholdNanos = threshold.toNanos();
+    }
+
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return getSlowQueryThreshold().toMillis();
+    }
+
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        setSlowQueryThreshold(Duration.ofMillis(millis));
+    }
+
+
+    @Override
+    public synchronized long getExecutionCount() {
+        return executionCount;
+    }
+
+
+    /**
+     * Get the entries which consume the most execution time in aggregate.
+     * @param n the maximum number of entries
+     * @return the entries in descending order of the total execution time
+     */
+    public synchronized List<Entry> top(int n) {
+        return entries.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<Key, Stats> e) -> e.getValue().totalNanos).reversed())
+            .limit(n)
+            .map(e -> e.getValue().toEntry(e.getKey()))
+            .toList();
+    }
+
+
+    /**
+     * Get the recent slow queries.
+     * @return the slow queries, from the oldest
+     */
+    public synchronized List<SlowQuery> slowQueries() {
+        return List.copyOf(slowQueries);
+    }
+
+
+    @Override
+    public String[] getTopQueries() {
+        return top(20).stream().map(Entry::toString).toArray(String[]::new);
+    }
+
+
+    @Override
+    public String[] getSlowQueries() {
+        return slowQueries().stream().map(SlowQuery::toString).toArray(String[]::new);
+    }
+
+
+    @Override
+    public synchronized void reset() {
+        entries.clear();
+        slowQueries.clear();
+        executionCount = 0;
+    }
+
+
+    /**
+     * Record the execution of a query.
+     * @param rootClass the class of the query root
+     * @param kind the kind of execution
+     * @param fingerprint the fingerprint of the query
+     * @param executeNanos the nanoseconds of the execution
+     * @param rows the number of rows, or {@code -1} if unknown
+     * @param sql the supplier of the SQL, called only for a slow query
+     */
+    void record(Class<?> rootClass, QueryListener.Kind kind, String fingerprint,
+            long executeNanos, long rows, Supplier<String> sql) {
+
+        SlowQuery slow = (executeNanos >= slowQueryThresholdNanos)
+            ? new SlowQuery(Instant.now(), rootClass, kind, fingerprint, Duration.ofNanos(executeNanos),
+                rows, sql.get(), QueryTrace.callSite())
+            : null;
+
+        synchronized (this) {
+            executionCount++;
+            var key = new Key(rootClass, kind, fingerprint);
+            Stats stats = entries.get(key);
+            if (Objects.isNull(stats)) {
+                if (entries.size() >= CAPACITY) {
+                    entries.entrySet().stream()
+                        .min(Comparator.comparingLong(e -> e.getValue().totalNanos))
+                        .map(Map.Entry::getKey)
+                        .ifPresent(entries::remove);
+                }
+                stats = new Stats();
+                entries.put(key, stats);
+            }
+            stats.add(executeNanos, rows);
+            if (Objects.nonNull(slow)) {
+                if (slowQueries.size() >= SLOW_QUERY_CAPACITY) {
+                    slowQueries.removeFirst();
+                }
+                slowQueries.addLast(slow);
+            }
+        }
+        if (Objects.nonNull(slow)) {
+            log.log(System.Logger.Level.WARNING, slow.toString());
+        }
+    }
+
+
+    /**
+     * The statistics entry of a query shape.
+     * @param rootClass the class of the query root
+     * @param kind the kind of execution
+     * @param fingerprint the fingerprint of the query
+     * @param count the number of executions
+     * @param total the total execution time
+     * @param max the max execution time
+     * @param p50 the 50th percentile of the execution time
+     * @param p95 the 95th percentile of the execution time
+     * @param p99 the 99th percentile of the execution time
+     * @param rows the total number of rows, excluding the streams
+     */
+    public record Entry(Class<?> rootClass, QueryListener.Kind kind, String fingerprint, long count,
+        Duration total, Duration max, Duration p50, Duration p95, Duration p99, long rows) {
+
+        @Override
+        public String toString() {
+            return String.format("%s %s [%s] count=%d total=%dms max=%dms p50=%dms p95=%dms p99=%dms rows=%d",
+                Objects.isNull(rootClass) ? "-" : rootClass.getSimpleName(), kind, fingerprint, count,
+                total.toMillis(), max.toMillis(), p50.toMillis(), p95.toMillis(), p99.toMillis(), rows);
+        }
+    }
+
+
+    /**
+     * The slow query.
+     * @param time the time of recording
+     * @param rootClass the class of the query root
+     * @param kind the kind of execution
+     * @param fingerprint the fingerprint of the query
+     * @param execute the execution time
+     * @param rows the number of rows, or {@code -1} if unknown
+     * @param sql the SQL, or {@code null} if the provider does not support it
+     * @param callSite the call site
+     */
+    public record SlowQuery(Instant time, Class<?> rootClass, QueryListener.Kind kind, String fingerprint,
+        Duration execute, long rows, String sql, String callSite) {
+
+        @Override
+        public String toString() {
+            return String.format("Slow query %dms %s %s [%s] rows=%d at %s : %s",
+                execute.toMillis(), Objects.isNull(rootClass) ? "-" : rootClass.getSimpleName(), kind,
+                fingerprint, rows, callSite, sql);
+        }
+    }
+
+
+    /** The key of statistics. */
+    private record Key(Class<?> rootClass, QueryListener.Kind kind, String fingerprint) { }
+
+
+    /**
+     * The mutable statistics of a query shape.
+     * The histogram has four buckets for each power of two of the nanoseconds.
+     */
+    private static final class Stats {
+
+        private final long[] histogram = new long[256];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long rows;
+
+        void add(long nanos, long rows) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            this.rows += Math.max(rows, 0);
+            histogram[bucket(Math.max(nanos, 0))]++;
+        }
+
+        long percentile(double p) {
+            long rank = (long) Math.ceil(count * p);
+            long cumulative = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                cumulative += histogram[i];
+                if (cumulative >= rank) {
+                    return Math.min(upperBound(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        Entry toEntry(Key key) {
+            return new Entry(key.rootClass(), key.kind(), key.fingerprint(), count,
+                Duration.ofNanos(totalNanos), Duration.ofNanos(maxNanos),
+                Duration.ofNanos(percentile(0.50)), Duration.ofNanos(percentile(0.95)),
+                Duration.ofNanos(percentile(0.99)), rows);
+        }
+
+        static int bucket(long nanos) {
+            if (nanos < 4) {
+                return (int) nanos;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exp - 2)) & 3;
+            return (exp - 1) * 4 + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int exp = bucket / 4 + 1;
+            long lower = (4L + bucket % 4) << (exp - 2);
+            return lower + (1L << (exp - 2)) - 1;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+/**
+ * The management interface of {@link QueryStatistics}.
+ * @author Naotsugu Kobayashi
+ */
+public interface QueryStatisticsMXBean {
+
+    /**
+     * Get whether the statistics are collected.
+     * @return {@code true} if the statistics are collected
+     */
+    boolean isEnabled();
+
+
+    /**
+     * Set whether the statistics are collected.
+     * @param enabled {@code true} to collect the statistics
+     */
+    void setEnabled(boolean enabled);
+
+
+    /**
+     * Get the threshold of the slow query in milliseconds.
+     * @return the threshold of the slow query in milliseconds
+     */
+    long getSlowQueryThresholdMillis();
+
+
+    /**
+     * Set the threshold of the slow query in milliseconds.
+     * @param millis the threshold of the slow query in milliseconds
+     */
+    void setSlowQueryThresholdMillis(long millis);
+
+
+    /**
+     * Get the number of query executions recorded.
+     * @return the number of query executions
+     */
+    long getExecutionCount();
+
+
+    /**
+     * Get the summaries of the queries which consume the most execution time in aggregate.
+     * @return the summaries of the top queries
+     */
+    String[] getTopQueries();
+
+
+    /**
+     * Get the summaries of the recent slow queries.
+     * @return the summaries of the slow queries
+     */
+    String[] getSlowQueries();
+
+
+    /**
+     * Clear the statistics and the slow queries.
+     */
+    void reset();
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaDelete;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.CodeSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * The instrumentation of queries for the {@link QueryListener}s and the {@link QueryEvent}.
+ * <p>
+ * If any listener is registered, the {@link QueryStatistics} is enabled, a {@link LazyLoadDetector} is open,
+ * or the flight recording of {@link QueryEvent} is enabled,
+ * the created query is wrapped by a proxy which times the executions,
+ * otherwise the query is returned as it is.
+ * <p>
+ * The proxy implements only {@link TypedQuery} or {@link Query}, so it can not be cast to the query type
+ * of the persistence provider. {@code unwrap()} is delegated to the query of the provider,
+ * and the query unwrapped is not instrumented.
+ * The lookups by {@link EntityManager#find(Class, Object)} are instrumented by {@link #find(EntityManager, Class, Object)}.
+ * @author Naotsugu Kobayashi
+ */
+final class QueryTrace {
+
+    /** The registered listeners. */
+    private static final List<QueryListener> LISTENERS = new CopyOnWriteArrayList<>(load());
+
+    /** The logger. */
+    private static final System.Logger log = System.getLogger(QueryTrace.class.getName());
+
+
+    private QueryTrace() { }
+
+
+    /**
+     * Get whether the queries are instrumented.
+     * @return {@code true} if any listener is registered, the statistics is enabled,
+     *     a lazy load detector is open or the event is recorded
+     */
+    static boolean enabled() {
+        return !LISTENERS.isEmpty() || QueryStatistics.shared().isEnabled() || LazyLoadDetector.active()
+            || new QueryEvent().isEnabled();
+    }
+
+
+    /**
+     * Register the given listener.
+     * @param listener the listener
+     */
+    static void register(QueryListener listener) {
+        LISTENERS.add(Objects.requireNonNull(listener));
+    }
+
+
+    /**
+     * Unregister the given listener.
+     * @param listener the listener
+     */
+    static void unregister(QueryListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+
+    /**
+     * Create the query from the given criteria query, and instrument it.
+     * @param em the {@link EntityManager}
+     * @param cq the criteria query
+     * @param buildStart the {@link System#nanoTime()} at the start of building the criteria query
+     * @param count whether the query is a count query
+     * @param components the components of the query, from which the fingerprint is taken
+     * @param <U> the type of query result
+     * @return the query
+     */
+    static <U> TypedQuery<U> createQuery(EntityManager em, CriteriaQuery<U> cq, long buildStart,
+            boolean count, Object... components) {
+        if (!enabled()) {
+            return em.createQuery(cq);
+        }
+        long translateStart = System.nanoTime();
+        TypedQuery<U> query = em.createQuery(cq);
+        long translateEnd = System.nanoTime();
+        return traced(query, rootClass(cq), translateStart - buildStart, translateEnd - translateStart,
+            count, components);
+    }
+
+
+    /**
+     * Create the bulk update query from the given criteria update, and instrument it.
+     * @param em the {@link EntityManager}
+     * @param cu the criteria update
+     * @param buildStart the {@link System#nanoTime()} at the start of building the criteria update
+     * @param components the components of the query, from which the fingerprint is taken
+     * @return the query
+     */
+    static Query createQuery(EntityManager em, CriteriaUpdate<?> cu, long buildStart, Object... components) {
+        return createUpdate(() -> em.createQuery(cu), cu.getRoot().getJavaType(), buildStart, components);
+    }
+
+
+    /**
+     * Create the bulk delete query from the given criteria delete, and instrument it.
+     * @param em the {@link EntityManager}
+     * @param cd the criteria delete
+     * @param buildStart the {@link System#nanoTime()} at the start of building the criteria delete
+     * @param components the components of the query, from which the fingerprint is taken
+     * @return the query
+     */
+    static Query createQuery(EntityManager em, CriteriaDelete<?> cd, long buildStart, Object... components) {
+        return createUpdate(() -> em.createQuery(cd), cd.getRoot().getJavaType(), buildStart, components);
+    }
+
+
+    private static Query createUpdate(Supplier<Query> factory, Class<?> rootClass, long buildStart,
+            Object... components) {
+        if (!enabled()) {
+            return factory.get();
+        }
+        long translateStart = System.nanoTime();
+        Query query = factory.get();
+        long translateEnd = System.nanoTime();
+        return (Query) proxy(Query.class, new Handler(query, rootClass,
+            translateStart - buildStart, translateEnd - translateStart, false, components));
+    }
+
+
+    /**
+     * Find the entity by the given id, and instrument the lookup.
+     * @param em the {@link EntityManager}
+     * @param entityClass the class of entity
+     * @param id the id
+     * @param <E> the type of entity
+     * @return the entity found, or {@code null} if not found
+     */
+    static <E> E find(EntityManager em, Class<E> entityClass, Object id) {
+        if (!enabled()) {
+            return em.find(entityClass, id);
+        }
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        E found = em.find(entityClass, id);
+        long elapsed = System.nanoTime() - start;
+        event.end();
+        event.firstResult = 0;
+        event.maxResults = 1;
+        executed(event, entityClass, QueryListener.Kind.FIND, 0, 0, elapsed, Objects.isNull(found) ? 0 : 1,
+            () -> "find(" + entityClass.getName() + ")", () -> null,
+            Objects.isNull(found) ? List.of() : List.of(found));
+        return found;
+    }
+
+
+    /**
+     * Instrument the given query.
+     * @param query the query
+     * @param rootClass the class of the query root
+     * @param buildNanos the nanoseconds of building the criteria query
+     * @param translateNanos the nanoseconds of creating the query
+     * @param count whether the query is a count query
+     * @param components the components of the query, from which the fingerprint is taken
+     * @param <U> the type of query result
+     * @return the instrumented query
+     */
+    static <U> TypedQuery<U> traced(TypedQuery<U> query, Class<?> rootClass,
+            long buildNanos, long translateNanos, boolean count, Object... components) {
+        if (!enabled() || isTraced(query)) {
+            return query;
+        }
+        @SuppressWarnings("unchecked")
+        TypedQuery<U> proxy = (TypedQuery<U>) proxy(TypedQuery.class,
+            new Handler(query, rootClass, buildNanos, translateNanos, count, components));
+        return proxy;
+    }
+
+
+    /**
+     * Get whether the given query is already instrumented by this class.
+     * The proxies created by others are instrumented.
+     * @param query the query
+     * @return {@code true} if the given query is instrumented
+     */
+    static boolean isTraced(Query query) {
+        return Proxy.isProxyClass(query.getClass()) && Proxy.getInvocationHandler(query) instanceof Handler;
+    }
+
+
+    private static Object proxy(Class<?> type, Handler handler) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+
+    /**
+     * Get the class of the first root of the given criteria query.
+     * @param cq the criteria query
+     * @return the class of the root, or {@code null} if no root
+     */
+    static Class<?> rootClass(CriteriaQuery<?> cq) {
+        return cq.getRoots().isEmpty() ? null : cq.getRoots().iterator().next().getJavaType();
+    }
+
+
+    /**
+     * Get the first frame out of this library on the current stack.
+     * @return the call site
+     */
+    static String callSite() {
+        CodeSource library = QueryTrace.class.getProtectionDomain().getCodeSource();
+        return StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE).walk(frames -> frames
+            .filter(frame -> !isInternal(frame.getDeclaringClass(), library))
+            .findFirst()
+            .map(StackWalker.StackFrame::toStackTraceElement)
+            .map(StackTraceElement::toString)
+            .orElse(null));
+    }
+
+
+    private static boolean isInternal(Class<?> c, CodeSource library) {
+        String name = c.getName();
+        return name.startsWith("java.") || name.startsWith("jdk.") || name.startsWith("sun.")
+            || c.isHidden() || Objects.equals(c.getProtectionDomain().getCodeSource(), library);
+    }
+
+
+    /**
+     * Report the execution to the flight recorder, the statistics, the lazy load detector and the listeners.
+     * The first and the max results of the event are set by the caller.
+     */
+    private static void executed(QueryEvent event, Class<?> rootClass, QueryListener.Kind kind,
+            long buildNanos, long translateNanos, long elapsed, long size,
+            Supplier<String> fingerprint, Supplier<String> sql, List<?> results) {
+        if (event.shouldCommit()) {
+            event.rootClass = rootClass;
+            event.kind = kind.name();
+            event.rows = size;
+            event.fingerprint = fingerprint.get();
+            event.build = buildNanos;
+            event.translate = translateNanos;
+            event.commit();
+        }
+        if (Objects.nonNull(results)) {
+            LazyLoadDetector.track(rootClass, results);
+        }
+        QueryStatistics statistics = QueryStatistics.shared();
+        if (statistics.isEnabled()) {
+            statistics.record(rootClass, kind, fingerprint.get(), elapsed, size, sql);
+        }
+        fire(new QueryListener.Event(rootClass, kind,
+            Duration.ofNanos(buildNanos), Duration.ofNanos(translateNanos), Duration.ofNanos(elapsed), size));
+    }
+
+
+    private static void fire(QueryListener.Event event) {
+        if (LISTENERS.isEmpty()) {
+            return;
+        }
+        for (QueryListener listener : LISTENERS) {
+            try {
+                listener.onExecuted(event);
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "The query listener failed. " + listener, e);
+            }
+        }
+    }
+
+
+    private static List<QueryListener> load() {
+        List<QueryListener> listeners = new ArrayList<>();
+        ServiceLoader.load(QueryListener.class).forEach(listeners::add);
+        return List.copyOf(listeners);
+    }
+
+
+    /**
+     * The invocation handler, which times the executions of the query.
+     */
+    private static final class Handler implements InvocationHandler {
+
+        /** The target query. */
+        private final Query target;
+
+        /** The class of the query root. */
+        private final Class<?> rootClass;
+
+        /** Whether the query is a count query. */
+        private final boolean count;
+
+        /** The components of the query. */
+        private final Object[] components;
+
+        /** The shape of the query, taken lazily. */
+        private String fingerprint;
+
+        /** The nanoseconds of building, reported on the first execution. */
+        private long buildNanos;
+
+        /** The nanoseconds of translation, reported on the first execution. */
+        private long translateNanos;
+
+
+        Handler(Query target, Class<?> rootClass, long buildNanos, long translateNanos,
+                boolean count, Object[] components) {
+            this.target = target;
+            this.rootClass = rootClass;
+            this.buildNanos = buildNanos;
+            this.translateNanos = translateNanos;
+            this.count = count;
+            this.components = components;
+        }
+
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("equals") && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("unwrap")) {
+                // the query of the provider, which the proxy can not be cast to
+                return invoke(method, args);
+            }
+            if (method.getParameterCount() > 0 || !isExecution(method.getName())) {
+                Object ret = invoke(method, args);
+                // keep the proxy on the method chain
+                return (ret == target) ? proxy : ret;
+            }
+
+            QueryEvent event = new QueryEvent();
+            event.begin();
+            long start = System.nanoTime();
+            Object ret = invoke(method, args);
+            long elapsed = System.nanoTime() - start;
+            event.end();
+
+            QueryListener.Kind kind;
+            long size;
+            List<?> results = null;
+            if (method.getName().equals("executeUpdate")) {
+                kind = QueryListener.Kind.UPDATE;
+                size = (Integer) ret;
+            } else if (method.getName().equals("getResultList")) {
+                kind = count ? QueryListener.Kind.COUNT
+                    : (target.getMaxResults() < Integer.MAX_VALUE) ? QueryListener.Kind.SLICE
+                    : QueryListener.Kind.LIST;
+                size = ((List<?>) ret).size();
+                results = count ? null : (List<?>) ret;
+            } else if (method.getName().equals("getResultStream") || isCursor(target)) {
+                kind = QueryListener.Kind.STREAM;
+                size = -1;
+            } else {
+                kind = count ? QueryListener.Kind.COUNT : QueryListener.Kind.SINGLE;
+                size = 1;
+                results = count ? null : Collections.singletonList(ret);
+            }
+            if (kind != QueryListener.Kind.UPDATE && event.shouldCommit()) {
+                event.firstResult = target.getFirstResult();
+                event.maxResults = (target.getMaxResults() < Integer.MAX_VALUE) ? target.getMaxResults() : -1;
+            }
+            executed(event, rootClass, kind, buildNanos, translateNanos, elapsed, size, this::fingerprint,
+                () -> Provider.of(target).sql(target).orElse(null), results);
+            buildNanos = 0;
+            translateNanos = 0;
+            return ret;
+        }
+
+
+        private String fingerprint() {
+            if (Objects.isNull(fingerprint)) {
+                fingerprint = Fingerprint.of(components).shape();
+            }
+            return fingerprint;
+        }
+
+
+        private Object invoke(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+
+        private static boolean isCursor(Query query) {
+            Map<String, Object> hints = query.getHints();
+            return Objects.nonNull(hints) && hints.containsKey("eclipselink.cursor");
+        }
+
+
+        private static boolean isExecution(String name) {
+            return name.equals("getResultList") || name.equals("getSingleResult") || name.equals("getResultStream")
+                || name.equals("executeUpdate");
+        }
+    }
+
+}
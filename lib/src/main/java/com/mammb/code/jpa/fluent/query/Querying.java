@@ -96,8 +96,31 @@ public interface Querying<E, R extends RootAware<E>, U> extends CreateQuery<E, R
     <Y> Querying<E, R, Y> map(Mapper<E, R, Y> mapper);
 
 
+    /**
+     * Fetch the given association of the root entity with the results.
+     * <pre>
+     *     List&lt;Issue&gt; issues = Querying.of(IssueModel.root())
+     *         .fetch(issue -> issue.getProject())
+     *         .fetch(issue -> issue.getJournals())
+     *         .toPage(SlicePoint.of(0, 20)).on(em).getContent();
+     * </pre>
+     * The single-valued association is fetched by the left fetch join.
+     * The collection-valued association is loaded in a batch for all the results,
+     * by the batch fetch of the provider, or by an additional query per association with {@code distinct}
+     * after the results are read, so the paging is applied to the root entities.
+     * The stream by a cursor, the keyset, the compiled and the cached queries do not support
+     * the collection-valued association, and throw {@link UnsupportedOperationException}.
+     * The fetch is applied only when the root entity is selected, and is discarded by {@link #map(Mapper)}.
+     * @param selector the selector of the association path
+     * @param <Y> the type of association
+     * @return the {@link Querying}
+     */
+    <Y> Querying<E, R, U> fetch(Criteria.ExpressionSelector<E, R, Y> selector);
+
+
     /**
      * Apply the given {@link Hint} to the current {@link Querying}.
+     * If the hint is an entity graph, distinct is applied, since the graph may fetch collections.
      * @param hints the {@link Hint} to apply
      * @return the {@link Querying}
      */
@@ -170,8 +193,14 @@ public interface Querying<E, R extends RootAware<E>, U> extends CreateQuery<E, R
                 return Querying.of(rootSource(), Mapper.of(resultType, ExpressionSelector.of(selector)), filter(), sorts(), hints());
             }
             @Override
+            public <Y> Querying<E, R, U> fetch(Criteria.ExpressionSelector<E, R, Y> selector) {
+                return Querying.of(rootSource(), FetchMapper.of(mapper(), selector), filter(), sorts(), hints());
+            }
+            @Override
             public Querying<E, R, U> with(Hint hint) {
-                return Querying.of(rootSource(), mapper().distinct(true), filter(), sorts(), hints().add(hint));
+                // the entity graph may fetch collections, which are not visible in the criteria query
+                Mapper<E, R, U> m = hint.isEntityGraph() ? mapper().distinct(true) : mapper();
+                return Querying.of(rootSource(), m, filter(), sorts(), hints().add(hint));
             }
             @Override
             public RootSource<E, R> rootSource() { return rootSource; }
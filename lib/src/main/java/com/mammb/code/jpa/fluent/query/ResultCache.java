@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+/**
+ * The size-bounded cache of query results, used by {@link CachedQuery}.
+ * <p>
+ * The implementation is pluggable, e.g. a cache library can be adapted by implementing this interface.
+ * The keys and the values are opaque to the implementation,
+ * and the time to live and the invalidation are handled by the {@link CachedQuery} on reading the value.
+ * The implementation must be thread safe.
+ * @author Naotsugu Kobayashi
+ */
+public interface ResultCache {
+
+    /**
+     * Get the value of the given key.
+     * @param key the key
+     * @return the value, or {@code null} if the value is not cached
+     */
+    Object get(Object key);
+
+
+    /**
+     * Put the value of the given key.
+     * The value may not be retained, depending on the admission policy of the cache.
+     * @param key the key
+     * @param value the value
+     */
+    void put(Object key, Object value);
+
+
+    /**
+     * Remove the value of the given key.
+     * @param key the key
+     */
+    void remove(Object key);
+
+
+    /**
+     * Discard all values.
+     */
+    void clear();
+
+
+    /**
+     * Get the shared {@link ResultCache}.
+     * @return the shared {@link ResultCache}
+     */
+    static ResultCache shared() {
+        return TinyLfuResultCache.SHARED;
+    }
+
+
+    /**
+     * Create a new in-process {@link ResultCache}.
+     * The cache admits a new value by the estimated access frequency,
+     * in the manner of W-TinyLFU, so a burst of one-off queries does not flush the frequently used results.
+     * @param capacity the maximum number of results
+     * @return a new {@link ResultCache}
+     */
+    static ResultCache of(int capacity) {
+        return new TinyLfuResultCache(capacity);
+    }
+
+}
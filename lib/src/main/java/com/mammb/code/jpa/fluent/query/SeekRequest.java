@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.RootAware;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The query keyset slice request.
+ * @param <E> the type of entity
+ * @param <R> the type of root
+ * @author Naotsugu Kobayashi
+ */
+public interface SeekRequest<E, R extends RootAware<E>> extends Request<E, R>, KeysetPoint {
+
+    /**
+     * Get the {@link KeysetPoint}.
+     * @return the {@link KeysetPoint}
+     */
+    default KeysetPoint getKeysetPoint() {
+        return KeysetPoint.of();
+    }
+
+
+    @Override
+    default int getNumber() {
+        return getKeysetPoint().getNumber();
+    }
+
+
+    @Override
+    default int getSize() {
+        return getKeysetPoint().getSize();
+    }
+
+
+    @Override
+    default List<Object> getKeys() {
+        return getKeysetPoint().getKeys();
+    }
+
+
+    @Override
+    default SeekRequest<E, R> next(List<?> keys) {
+        return of(getFilter(), getSorts(), getKeysetPoint().next(keys));
+    }
+
+
+    /**
+     * Create the {@link SeekRequest} with given keyset point.
+     * @param point a {@link KeysetPoint}
+     * @return the {@link SeekRequest}
+     */
+    default SeekRequest<E, R> withPoint(KeysetPoint point) {
+        return of(getFilter(), getSorts(), point);
+    }
+
+
+    @Override
+    default SeekRequest<E, R> withSize(int size) {
+        return of(getFilter(), getSorts(), getKeysetPoint().withSize(size));
+    }
+
+
+    /**
+     * Create a {@link SeekRequest}
+     * @param filter a {@link Filter}
+     * @param sorts a {@link Sorts}
+     * @param keysetPoint a {@link KeysetPoint}
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return the {@link SeekRequest}
+     */
+    static <E, R extends RootAware<E>> SeekRequest<E, R> of(
+            Filter<E, R> filter, Sorts<E, R> sorts, KeysetPoint keysetPoint) {
+        return new SeekRequest<>() {
+            @Override
+            public Filter<E, R> getFilter() { return Objects.isNull(filter) ? Filter.empty() : filter; }
+            @Override
+            public Sorts<E, R> getSorts() { return Objects.isNull(sorts) ? Sorts.empty() : sorts; }
+            @Override
+            public KeysetPoint getKeysetPoint() { return Objects.isNull(keysetPoint) ? KeysetPoint.of() : keysetPoint; }
+        };
+    }
+
+}
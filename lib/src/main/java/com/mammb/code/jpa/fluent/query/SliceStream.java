@@ -15,6 +15,9 @@
  */
 package com.mammb.code.jpa.fluent.query;
 
+import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.core.RootSource;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -33,23 +36,38 @@ public class SliceStream<U> implements Iterator<U>, Iterable<U> {
 
     private final TypedQuery<Long> countQuery;
     private final TypedQuery<U> query;
+    private final Keyset<?, ?, U> keyset;
     private final Deque<U> deque;
     private final List<Runnable> perActions;
 
     private SlicePoint slicePoint;
+    private KeysetPoint keysetPoint;
     private Boolean hasNextPage;
+    private List<U> page;
 
 
     private SliceStream(TypedQuery<Long> countQuery, TypedQuery<U> query, SlicePoint slicePoint,
             Deque<U> deque, List<Runnable> perActions) {
         this.countQuery = countQuery;
         this.query = Objects.requireNonNull(query);
+        this.keyset = null;
         this.slicePoint = Objects.requireNonNull(slicePoint);
         this.deque = Objects.requireNonNull(deque);
         this.perActions = Objects.requireNonNull(perActions);
     }
 
 
+    private SliceStream(Keyset<?, ?, U> keyset, KeysetPoint keysetPoint,
+            Deque<U> deque, List<Runnable> perActions) {
+        this.countQuery = null;
+        this.query = null;
+        this.keyset = Objects.requireNonNull(keyset);
+        this.keysetPoint = Objects.requireNonNull(keysetPoint);
+        this.deque = Objects.requireNonNull(deque);
+        this.perActions = Objects.requireNonNull(perActions);
+    }
+
+
     /**
      * Create the {@link SliceStream}.
      * @param countQuery The count query
@@ -75,6 +93,30 @@ public class SliceStream<U> implements Iterator<U>, Iterable<U> {
     }
 
 
+    /**
+     * Create the {@link SliceStream} which reads pages by keyset.
+     * Each page is read by seeking to the sort keys of the last element of the previous page,
+     * so neither count nor offset is used.
+     * @param em {@link EntityManager}
+     * @param rootSource {@link RootSource}
+     * @param mapper {@link Mapper}
+     * @param filter {@link Filter}
+     * @param sorts {@link Sorts}
+     * @param hints {@link Hints}
+     * @param keysetPoint the point of the first page
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @param <U> The type of query result
+     * @return The {@link SliceStream}
+     */
+    public static <E, R extends RootAware<E>, U> SliceStream<U> keysetOf(
+            EntityManager em, RootSource<E, R> rootSource, Mapper<E, R, U> mapper,
+            Filter<E, R> filter, Sorts<E, R> sorts, Hints hints, KeysetPoint keysetPoint) {
+        return new SliceStream<>(Keyset.of(em, rootSource, mapper, filter, sorts, hints),
+            keysetPoint, new ArrayDeque<>(), new ArrayList<>());
+    }
+
+
     /**
      * Add actions to be performed on a page-by-page.
      * @param action the actions to be performed
@@ -84,6 +126,23 @@ public class SliceStream<U> implements Iterator<U>, Iterable<U> {
     }
 
 
+    /**
+     * Add the {@link ContextPolicy} to be applied on a page-by-page.
+     * The policy is applied before reading the next page, so the previous page has already been consumed.
+     * @param em the {@link EntityManager} which the query belongs to
+     * @param policy the {@link ContextPolicy}
+     */
+    public void addContextPolicy(EntityManager em, ContextPolicy policy) {
+        Objects.requireNonNull(em);
+        Objects.requireNonNull(policy);
+        addPerAction(() -> {
+            if (Objects.nonNull(page)) {
+                policy.apply(em, page);
+            }
+        });
+    }
+
+
     /**
      * Get the {@link Stream}.
      * @return the {@link Stream}
@@ -122,7 +181,9 @@ public class SliceStream<U> implements Iterator<U>, Iterable<U> {
 
     private void refuel() {
         perActions.forEach(Runnable::run);
-        if (isForward()) {
+        if (Objects.nonNull(keyset)) {
+            refuelKeyset();
+        } else if (isForward()) {
             refuelForward();
         } else {
             refuelBackward();
@@ -134,7 +195,15 @@ public class SliceStream<U> implements Iterator<U>, Iterable<U> {
         slicePoint = slicePoint.next();
         Slice<U> slice = QueryBuilder.slice(query, slicePoint);
         hasNextPage = slice.hasNext();
-        deque.addAll(slice.getContent());
+        fill(slice.getContent());
+    }
+
+
+    private void refuelKeyset() {
+        KeysetSlice<U> slice = keyset.slice(keysetPoint);
+        keysetPoint = slice.nextPoint();
+        hasNextPage = slice.hasNext();
+        fill(slice.getContent());
     }
 
 
@@ -156,7 +225,13 @@ public class SliceStream<U> implements Iterator<U>, Iterable<U> {
 
         Slice<U> slice = QueryBuilder.slice(query, slicePoint);
         hasNextPage = slicePoint.getNumber() > 0;
-        deque.addAll(slice.getContent());
+        fill(slice.getContent());
+    }
+
+
+    private void fill(List<U> content) {
+        page = content;
+        deque.addAll(content);
     }
 
 }
@@ -19,6 +19,7 @@ import com.mammb.code.jpa.fluent.core.RootAware;
 import jakarta.persistence.criteria.Order;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -45,7 +46,7 @@ public interface Sorts<E, R extends RootAware<E>> {
      * @return the {@link Sorts} after composite
      */
     default Sorts<E, R> and(Sort<E, R> other) {
-        return Sorts.add(this, other);
+        return Composite.of(this, Composite.single(other));
     }
 
 
@@ -55,7 +56,7 @@ public interface Sorts<E, R extends RootAware<E>> {
      * @return the {@link Sorts} after composite
      */
     default Sorts<E, R> ands(Sorts<E, R> other) {
-        return Sorts.plus(this, other);
+        return Composite.of(this, other);
     }
 
 
@@ -66,7 +67,7 @@ public interface Sorts<E, R extends RootAware<E>> {
      * @return an empty {@link Sorts}
      */
     static <E, R extends RootAware<E>> Sorts<E, R> empty() {
-        return root -> List.of();
+        return new Composite<>(List.of());
     }
 
 
@@ -78,7 +79,7 @@ public interface Sorts<E, R extends RootAware<E>> {
      * @return a {@link Sorts}
      */
     static <E, R extends RootAware<E>> Sorts<E, R> of(Sort<E, R> sort) {
-        return root -> List.of(sort.apply(root));
+        return Composite.single(sort);
     }
 
 
@@ -91,7 +92,7 @@ public interface Sorts<E, R extends RootAware<E>> {
      * @return a {@link Sorts}
      */
     static <E, R extends RootAware<E>> Sorts<E, R> of(Sort<E, R> lhs, Sort<E, R> rhs) {
-        return root -> List.of(lhs.apply(root), rhs.apply(root));
+        return new Composite<>(List.of(Composite.single(lhs), Composite.single(rhs)));
     }
 
 
@@ -105,28 +106,70 @@ public interface Sorts<E, R extends RootAware<E>> {
      */
     @SafeVarargs
     static <E, R extends RootAware<E>> Sorts<E, R> of(Sort<E, R> sort, Sort<E, R>... sorts) {
-        return root -> Arrays.stream(sorts).reduce(Sorts.of(sort), Sorts::and, Sorts::plus).apply(root);
+        List<Sorts<E, R>> parts = new ArrayList<>(sorts.length + 1);
+        parts.add(Composite.single(sort));
+        Arrays.stream(sorts).map(Composite::single).forEach(parts::add);
+        return new Composite<>(List.copyOf(parts));
     }
 
 
-    private static <E, R extends RootAware<E>> Sorts<E, R> add(Sorts<E, R> lhs, Sort<E, R> rhs) {
-        return root -> {
-            List<Order> orders = new ArrayList<>(lhs.apply(root));
-            orders.add(rhs.apply(root));
-            orders.removeIf(Objects::isNull);
+    /**
+     * The flat composite of {@link Sorts}.
+     * The composite of composites is flattened, and the orders are collected into a single list without copying.
+     * @param parts the parts of sort
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     */
+    record Composite<E, R extends RootAware<E>>(List<Sorts<E, R>> parts) implements Sorts<E, R> {
+
+        @Override
+        public List<Order> apply(R root) {
+            List<Order> orders = new ArrayList<>(parts.size());
+            for (Sorts<E, R> part : parts) {
+                List<Order> list = part.apply(root);
+                if (Objects.nonNull(list)) {
+                    for (Order order : list) {
+                        if (Objects.nonNull(order)) {
+                            orders.add(order);
+                        }
+                    }
+                }
+            }
             return orders;
-        };
+        }
+
+        static <E, R extends RootAware<E>> Sorts<E, R> of(Sorts<E, R> lhs, Sorts<E, R> rhs) {
+            List<Sorts<E, R>> parts = new ArrayList<>();
+            addParts(parts, lhs);
+            addParts(parts, rhs);
+            return new Composite<>(List.copyOf(parts));
+        }
+
+        static <E, R extends RootAware<E>> Sorts<E, R> single(Sort<E, R> sort) {
+            return new Single<>(Objects.requireNonNull(sort));
+        }
+
+        private static <E, R extends RootAware<E>> void addParts(List<Sorts<E, R>> parts, Sorts<E, R> sorts) {
+            if (sorts instanceof Composite<E, R> composite) {
+                parts.addAll(composite.parts());
+            } else if (Objects.nonNull(sorts)) {
+                parts.add(sorts);
+            }
+        }
     }
 
 
-    private static <E, R extends RootAware<E>> Sorts<E, R> plus(Sorts<E, R> lhs, Sorts<E, R> rhs) {
-        return root -> {
-            List<Order> orders = new ArrayList<>(lhs.apply(root));
-            List<Order> rh = new ArrayList<>(rhs.apply(root));
-            orders.addAll(rh);
-            orders.removeIf(Objects::isNull);
-            return orders;
-        };
+    /**
+     * The {@link Sorts} of a single {@link Sort}.
+     * @param sort the sort
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     */
+    record Single<E, R extends RootAware<E>>(Sort<E, R> sort) implements Sorts<E, R> {
+        @Override
+        public List<Order> apply(R root) {
+            return Collections.singletonList(sort.apply(root));
+        }
     }
 
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The in-process {@link ResultCache} with the W-TinyLFU like eviction policy.
+ * <p>
+ * A new value enters the small LRU window. The value evicted from the window is admitted to the main space
+ * only if its estimated access frequency is higher than that of the victim of the main space.
+ * The main space is a segmented LRU, the values accessed twice are promoted from the probation
+ * segment to the protected segment.
+ * The frequency is estimated by a count-min sketch, which is halved periodically to forget the old history.
+ * @author Naotsugu Kobayashi
+ */
+final class TinyLfuResultCache implements ResultCache {
+
+    /** The default capacity. */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /** The shared cache. */
+    static final TinyLfuResultCache SHARED = new TinyLfuResultCache(DEFAULT_CAPACITY);
+
+    /** The maximum number of values in the window. */
+    private final int windowCapacity;
+
+    /** The maximum number of values in the protected segment. */
+    private final int protectedCapacity;
+
+    /** The maximum number of values in the main space. */
+    private final int mainCapacity;
+
+    /** The window segment, in access order. */
+    private final LinkedHashMap<Object, Object> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The probation segment, in access order. */
+    private final LinkedHashMap<Object, Object> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The protected segment, in access order. */
+    private final LinkedHashMap<Object, Object> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The frequency sketch. */
+    private final FrequencySketch sketch;
+
+
+    TinyLfuResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive. " + capacity);
+        }
+        // the window holds at least one value, and the main space at least one value if the capacity allows
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = (mainCapacity <= 1)
+            ? mainCapacity
+            : Math.min(mainCapacity - 1, Math.max(1, (int) (mainCapacity * 0.8)));
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+
+    @Override
+    public synchronized Object get(Object key) {
+        sketch.increment(key);
+        Object value = window.get(key);
+        if (Objects.nonNull(value)) {
+            return value;
+        }
+        value = protectedSegment.get(key);
+        if (Objects.nonNull(value)) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (Objects.nonNull(value)) {
+            promote(key, value);
+        }
+        return value;
+    }
+
+
+    @Override
+    public synchronized void put(Object key, Object value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        if (window.containsKey(key)) {
+            window.put(key, value);
+        } else if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, value);
+        } else if (probation.containsKey(key)) {
+            probation.remove(key);
+            promote(key, value);
+        } else {
+            sketch.increment(key);
+            window.put(key, value);
+            if (window.size() > windowCapacity) {
+                var eldest = removeEldest(window);
+                admit(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+
+    @Override
+    public synchronized void remove(Object key) {
+        if (Objects.isNull(window.remove(key)) && Objects.isNull(protectedSegment.remove(key))) {
+            probation.remove(key);
+        }
+    }
+
+
+    @Override
+    public synchronized void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+
+    /**
+     * Get the number of values in this cache.
+     * @return the number of values
+     */
+    synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+
+    private void admit(Object key, Object value) {
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.put(key, value);
+            return;
+        }
+        LinkedHashMap<Object, Object> victims = probation.isEmpty() ? protectedSegment : probation;
+        if (victims.isEmpty()) {
+            return;
+        }
+        Object victim = victims.keySet().iterator().next();
+        if (sketch.frequency(key) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            probation.put(key, value);
+        }
+    }
+
+
+    private void promote(Object key, Object value) {
+        protectedSegment.put(key, value);
+        if (protectedSegment.size() > protectedCapacity) {
+            var eldest = removeEldest(protectedSegment);
+            probation.put(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+
+    private static Map.Entry<Object, Object> removeEldest(LinkedHashMap<Object, Object> map) {
+        Iterator<Map.Entry<Object, Object>> it = map.entrySet().iterator();
+        Map.Entry<Object, Object> eldest = it.next();
+        var entry = Map.entry(eldest.getKey(), eldest.getValue());
+        it.remove();
+        return entry;
+    }
+
+
+    /**
+     * The count-min sketch of the access frequency, with the 4 hash functions and the counters up to 15.
+     */
+    private static class FrequencySketch {
+
+        /** The maximum of counter. */
+        private static final int MAX_COUNT = 15;
+
+        /** The seeds of hash functions. */
+        private static final int[] SEEDS = { 0x97cb3127, 0xb4c6bb8f, 0xc76c4c5b, 0xd0f86a69 };
+
+        /** The counters. */
+        private final byte[][] table;
+
+        /** The mask of the index. */
+        private final int mask;
+
+        /** The number of increments to halve the counters. */
+        private final int sampleSize;
+
+        /** The number of increments since the last halving. */
+        private int additions;
+
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            this.table = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(16, capacity);
+        }
+
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, table[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+
+        private int index(int hash, int i) {
+            int h = hash * SEEDS[i];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+
+        private static int spread(int hash) {
+            int h = hash * 0x9e3779b9;
+            return h ^ (h >>> 15);
+        }
+    }
+
+}
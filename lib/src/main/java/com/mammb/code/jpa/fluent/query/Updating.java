@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.core.Criteria;
+import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.core.RootSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Represents a bulk update that should be executed.
+ * <pre>
+ *     int count = Updating.of(IssueModel.root())
+ *         .set(issue -> issue.getPriority(), 3)
+ *         .filter(issue -> issue.getTitle().eq("foo"))
+ *         .execute().on(em);
+ * </pre>
+ * The bulk update does not affect the entities in the persistence context,
+ * and the lifecycle callbacks are not applied.
+ * @param <E> the type of entity
+ * @param <R> the type of root
+ * @author Naotsugu Kobayashi
+ */
+public interface Updating<E, R extends RootAware<E>> {
+
+    /**
+     * Apply the given value to the given path.
+     * @param path the selector of the path to be updated
+     * @param value the value
+     * @param <Y> the type of path
+     * @return the {@link Updating}
+     */
+    <Y> Updating<E, R> set(Criteria.PathSelector<E, R, Y> path, Y value);
+
+
+    /**
+     * Apply the given expression to the given path.
+     * @param path the selector of the path to be updated
+     * @param expression the selector of the expression
+     * @param <Y> the type of path
+     * @return the {@link Updating}
+     */
+    <Y> Updating<E, R> setExpression(Criteria.PathSelector<E, R, Y> path, Criteria.ExpressionSelector<E, R, ? extends Y> expression);
+
+
+    /**
+     * Apply the given {@link Filter} to the current {@link Updating}.
+     * @param filter the {@link Filter} to apply
+     * @return a filter applied {@link Updating}
+     */
+    Updating<E, R> filter(Filter<E, R> filter);
+
+
+    /**
+     * Increment the version attribute of the entity.
+     * Some providers, such as EclipseLink, increment the version of a versioned entity without this.
+     * @return the {@link Updating} with the version increment
+     */
+    Updating<E, R> versioned();
+
+
+    /**
+     * Get the number of entities updated.
+     * @return the number of entities updated
+     */
+    Query<Integer> execute();
+
+
+    /**
+     * Create an {@link Updating} for given root source.
+     * @param rootSource the root source
+     * @param <E> the type of entity
+     * @param <R> the type of root
+     * @return an {@link Updating}
+     */
+    static <E, R extends RootAware<E>> Updating<E, R> of(RootSource<E, R> rootSource) {
+        return Updating.of(rootSource, List.of(), Filter.empty(), false);
+    }
+
+
+    private static <E, R extends RootAware<E>> Updating<E, R> of(
+            RootSource<E, R> rootSource,
+            List<BiConsumer<CriteriaUpdate<E>, R>> assignments,
+            Filter<E, R> filter,
+            boolean versioned) {
+
+        return new Updating<>() {
+            @Override
+            public <Y> Updating<E, R> set(Criteria.PathSelector<E, R, Y> path, Y value) {
+                return Updating.of(rootSource, add(assignments,
+                    (update, root) -> update.set(path.apply(root).get(), value)), filter, versioned);
+            }
+            @Override
+            public <Y> Updating<E, R> setExpression(Criteria.PathSelector<E, R, Y> path,
+                    Criteria.ExpressionSelector<E, R, ? extends Y> expression) {
+                return Updating.of(rootSource, add(assignments,
+                    (update, root) -> update.set(path.apply(root).get(), expression.apply(root).get())), filter, versioned);
+            }
+            @Override
+            public Updating<E, R> filter(Filter<E, R> f) {
+                return Updating.of(rootSource, assignments, filter.and(f), versioned);
+            }
+            @Override
+            public Updating<E, R> versioned() {
+                return Updating.of(rootSource, assignments, filter, true);
+            }
+            @Override
+            public Query<Integer> execute() {
+                return em -> {
+                    long start = System.nanoTime();
+                    int count = QueryTrace.createQuery(em, criteriaUpdate(em, rootSource, assignments, filter, versioned),
+                        start, rootSource, assignments, filter, versioned).executeUpdate();
+                    CacheInvalidator.invalidate(em, rootSource.rootClass());
+                    return count;
+                };
+            }
+        };
+    }
+
+
+    private static <E, R extends RootAware<E>> CriteriaUpdate<E> criteriaUpdate(
+            EntityManager em,
+            RootSource<E, R> rootSource,
+            List<BiConsumer<CriteriaUpdate<E>, R>> assignments,
+            Filter<E, R> filter,
+            boolean versioned) {
+
+        if (assignments.isEmpty()) {
+            throw new IllegalStateException("No value is set to the update.");
+        }
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        try (var scope = QueryContext.open(cb)) {
+            CriteriaUpdate<E> cu = scope.put(cb.createCriteriaUpdate(rootSource.rootClass()));
+            // CriteriaUpdate is not an AbstractQuery, subqueries are created via the QueryContext
+            R root = rootSource.root(scope.put(cu.from(rootSource.rootClass())), null, cb);
+            assignments.forEach(assignment -> assignment.accept(cu, root));
+            if (versioned) {
+                Path<Number> version = root.get().get(versionAttribute(em, rootSource.rootClass()).getName());
+                cu.set(version, cb.sum(version, 1));
+            }
+            Optional.ofNullable(filter.apply(root)).ifPresent(cu::where);
+            return cu;
+        }
+    }
+
+
+    private static SingularAttribute<?, ?> versionAttribute(EntityManager em, Class<?> entityClass) {
+        return em.getMetamodel().entity(entityClass).getSingularAttributes().stream()
+            .filter(SingularAttribute::isVersion)
+            .filter(attribute -> Number.class.isAssignableFrom(attribute.getJavaType())
+                || attribute.getJavaType().isPrimitive())
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("No numeric version attribute. " + entityClass.getName()));
+    }
+
+
+    private static <E, R extends RootAware<E>> List<BiConsumer<CriteriaUpdate<E>, R>> add(
+            List<BiConsumer<CriteriaUpdate<E>, R>> assignments, BiConsumer<CriteriaUpdate<E>, R> assignment) {
+        var list = new ArrayList<>(assignments);
+        list.add(Objects.requireNonNull(assignment));
+        return List.copyOf(list);
+    }
+}
@@ -16,6 +16,7 @@
 package com.mammb.code.jpa.fluent.repository;
 
 import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.repository.trait.DeleteAllTrait;
 import java.io.Serializable;
 
 /**
@@ -26,5 +27,5 @@ import java.io.Serializable;
  * @author Naotsugu Kobayashi
  */
 public interface CrudTrait<PK extends Serializable, E, R extends RootAware<E>>
-    extends QueryTrait<PK, E, R>, CommandTrait<PK, E> {
+    extends QueryTrait<PK, E, R>, CommandTrait<PK, E>, DeleteAllTrait<E, R> {
 }
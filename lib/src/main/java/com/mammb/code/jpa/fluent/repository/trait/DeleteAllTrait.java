@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.repository.trait;
+
+import com.mammb.code.jpa.fluent.core.EntityManagerAware;
+import com.mammb.code.jpa.fluent.core.RootAware;
+import com.mammb.code.jpa.fluent.core.RootSourceAware;
+import com.mammb.code.jpa.fluent.query.Filter;
+import com.mammb.code.jpa.fluent.query.QueryBuilder;
+
+/**
+ * Delete all trait.
+ * @param <E> the type of entity
+ * @param <R> the type of root
+ * @author Naotsugu Kobayashi
+ */
+public interface DeleteAllTrait<E, R extends RootAware<E>> extends EntityManagerAware, RootSourceAware<E, R> {
+
+    /**
+     * Delete all entities matching the given filter by a single delete statement.
+     * The entities in the persistence context are not affected,
+     * and the cascade and the lifecycle callbacks are not applied.
+     * @param filter the {@link Filter}
+     * @return the number of entities deleted
+     */
+    default int deleteAll(Filter<E, R> filter) {
+        return QueryBuilder.delete(em(), rootSource(), filter);
+    }
+
+}
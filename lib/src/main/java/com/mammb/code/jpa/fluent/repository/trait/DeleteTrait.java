@@ -16,6 +16,7 @@
 package com.mammb.code.jpa.fluent.repository.trait;
 
 import com.mammb.code.jpa.fluent.core.EntityManagerAware;
+import com.mammb.code.jpa.fluent.query.CacheInvalidator;
 
 /**
  * Delete trait.
@@ -30,6 +31,7 @@ public interface DeleteTrait<E> extends EntityManagerAware {
      */
     default void delete(E entity) {
         em().remove(entity);
+        CacheInvalidator.invalidate(em(), entity.getClass());
     }
 
     /**
@@ -16,6 +16,7 @@
 package com.mammb.code.jpa.fluent.repository.trait;
 
 import com.mammb.code.jpa.fluent.core.EntityManagerAware;
+import com.mammb.code.jpa.fluent.query.CountStrategy;
 import com.mammb.code.jpa.fluent.query.Hints;
 import com.mammb.code.jpa.fluent.query.Mapper;
 import com.mammb.code.jpa.fluent.core.RootAware;
@@ -66,7 +67,18 @@ public interface FindPageTrait<E, R extends RootAware<E>> extends EntityManagerA
      * @return the {@link Page}
      */
     default Page<E> findPage(SlicePoint slicePoint, Filter<E, R> filter, Sorts<E, R> sorts) {
-        return QueryBuilder.page(em(), rootSource(), Mapper.of(), filter, sorts, slicePoint, Hints.empty());
+        return QueryBuilder.page(em(), rootSource(), Mapper.of(), filter, sorts, slicePoint, Hints.empty(),
+            countStrategy());
+    }
+
+
+    /**
+     * Get the {@link CountStrategy} of the total amount of elements of the page.
+     * Override to use the capped or cached count.
+     * @return the {@link CountStrategy}
+     */
+    default CountStrategy countStrategy() {
+        return CountStrategy.exact();
     }
 
 }
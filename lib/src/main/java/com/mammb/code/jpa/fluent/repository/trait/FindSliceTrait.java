@@ -17,11 +17,14 @@ package com.mammb.code.jpa.fluent.repository.trait;
 
 import com.mammb.code.jpa.fluent.core.EntityManagerAware;
 import com.mammb.code.jpa.fluent.query.Hints;
+import com.mammb.code.jpa.fluent.query.KeysetPoint;
+import com.mammb.code.jpa.fluent.query.KeysetSlice;
 import com.mammb.code.jpa.fluent.query.Mapper;
 import com.mammb.code.jpa.fluent.core.RootAware;
 import com.mammb.code.jpa.fluent.core.RootSourceAware;
 import com.mammb.code.jpa.fluent.query.Filter;
 import com.mammb.code.jpa.fluent.query.QueryBuilder;
+import com.mammb.code.jpa.fluent.query.SeekRequest;
 import com.mammb.code.jpa.fluent.query.Slice;
 import com.mammb.code.jpa.fluent.query.SlicePoint;
 import com.mammb.code.jpa.fluent.query.SliceRequest;
@@ -67,4 +70,37 @@ public interface FindSliceTrait<E, R extends RootAware<E>> extends EntityManager
         return QueryBuilder.slice(em(), rootSource(), Mapper.of(), filter, sorts, slicePoint, Hints.empty());
     }
 
+
+    /**
+     * Find keyset slice.
+     * @param request the seek request
+     * @return the {@link KeysetSlice}
+     */
+    default KeysetSlice<E> findSliceBy(SeekRequest<E, R> request) {
+        return findSlice(request.getKeysetPoint(), request.getFilter(), request.getSorts());
+    }
+
+
+    /**
+     * Find keyset slice.
+     * @param keysetPoint a {@link KeysetPoint}
+     * @param filter a {@link Filter}
+     * @return the {@link KeysetSlice}
+     */
+    default KeysetSlice<E> findSlice(KeysetPoint keysetPoint, Filter<E, R> filter) {
+        return findSlice(keysetPoint, filter, Sorts.empty());
+    }
+
+
+    /**
+     * Find keyset slice.
+     * @param keysetPoint a {@link KeysetPoint}
+     * @param filter a {@link Filter}
+     * @param sorts a {@link Sorts}
+     * @return the {@link KeysetSlice}
+     */
+    default KeysetSlice<E> findSlice(KeysetPoint keysetPoint, Filter<E, R> filter, Sorts<E, R> sorts) {
+        return QueryBuilder.slice(em(), rootSource(), Mapper.of(), filter, sorts, keysetPoint, Hints.empty());
+    }
+
 }
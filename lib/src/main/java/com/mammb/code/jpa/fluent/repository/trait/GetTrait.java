@@ -19,7 +19,19 @@ import com.mammb.code.jpa.fluent.core.EntityManagerAware;
 import com.mammb.code.jpa.fluent.core.RootAware;
 import com.mammb.code.jpa.fluent.core.RootSourceAware;
 
+import com.mammb.code.jpa.fluent.query.Provider;
+import com.mammb.code.jpa.fluent.query.QueryBuilder;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -47,7 +59,7 @@ public interface GetTrait<PK extends Serializable, E, R extends RootAware<E>> ex
      * @return the entity
      */
     default Optional<E> get(PK id) {
-        return Optional.ofNullable(em().find(rootSource().rootClass(), id));
+        return Optional.ofNullable(QueryBuilder.find(em(), rootSource().rootClass(), id));
     }
 
 
@@ -57,8 +69,84 @@ public interface GetTrait<PK extends Serializable, E, R extends RootAware<E>> ex
      * @return the entity
      */
     default E get(E entity) {
-        return em().find(rootSource().rootClass(),
+        return QueryBuilder.find(em(), rootSource().rootClass(),
             em().getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity));
     }
 
+
+    /**
+     * Get the entities for the given ids, in the order of the given ids.
+     * The ids not found are skipped.
+     * @param ids the ids
+     * @return the entities
+     */
+    default List<E> getAll(Collection<PK> ids) {
+        return List.copyOf(getMap(ids).values());
+    }
+
+
+    /**
+     * Get the entities for the given ids.
+     * The entities already in the persistence context are served without accessing the database,
+     * and the rest are loaded by {@code IN} queries of 500 ids each.
+     * @param ids the ids
+     * @return the map of id and entity, in the order of the given ids. The ids not found are not contained
+     */
+    default Map<PK, E> getMap(Collection<PK> ids) {
+        return getMap(ids, 500);
+    }
+
+
+    /**
+     * Get the entities for the given ids.
+     * The entities already in the persistence context are served without accessing the database,
+     * and the rest are loaded by {@code IN} queries of {@code chunkSize} ids each.
+     * The {@code chunkSize} should not exceed the limit of bind parameters of the database,
+     * e.g. 1000 elements in the {@code IN} list of Oracle, 2100 parameters of SQL Server.
+     * An entity with a composite id is loaded one by one.
+     * @param ids the ids
+     * @param chunkSize the number of ids per query
+     * @return the map of id and entity, in the order of the given ids. The ids not found are not contained
+     */
+    default Map<PK, E> getMap(Collection<PK> ids, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive. " + chunkSize);
+        }
+        Class<E> rootClass = rootSource().rootClass();
+        Provider provider = Provider.of(em());
+        Map<Object, E> found = new LinkedHashMap<>();
+        List<PK> rest = new ArrayList<>();
+        for (PK id : new LinkedHashSet<>(ids)) {
+            E managed = provider.managed(em(), rootClass, Objects.requireNonNull(id));
+            if (Objects.nonNull(managed)) {
+                found.put(id, managed);
+            } else {
+                rest.add(id);
+            }
+        }
+
+        EntityType<E> entityType = em().getMetamodel().entity(rootClass);
+        if (entityType.hasSingleIdAttribute()) {
+            String idName = entityType.getSingularAttributes().stream()
+                .filter(SingularAttribute::isId).findFirst().orElseThrow().getName();
+            PersistenceUnitUtil util = em().getEntityManagerFactory().getPersistenceUnitUtil();
+            for (int i = 0; i < rest.size(); i += chunkSize) {
+                QueryBuilder.findByIds(em(), rootClass, idName, rest.subList(i, Math.min(i + chunkSize, rest.size())))
+                    .forEach(e -> found.put(util.getIdentifier(e), e));
+            }
+        } else {
+            rest.forEach(id -> Optional.ofNullable(QueryBuilder.find(em(), rootClass, id))
+                .ifPresent(e -> found.put(id, e)));
+        }
+
+        Map<PK, E> map = new LinkedHashMap<>();
+        for (PK id : ids) {
+            E e = found.get(id);
+            if (Objects.nonNull(e)) {
+                map.put(id, e);
+            }
+        }
+        return map;
+    }
+
 }
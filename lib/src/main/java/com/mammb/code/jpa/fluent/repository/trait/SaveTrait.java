@@ -16,7 +16,14 @@
 package com.mammb.code.jpa.fluent.repository.trait;
 
 import com.mammb.code.jpa.fluent.core.EntityManagerAware;
+import com.mammb.code.jpa.fluent.query.CacheInvalidator;
+import com.mammb.code.jpa.fluent.query.Provider;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * SaveTrait.
@@ -31,12 +38,8 @@ public interface SaveTrait<E> extends EntityManagerAware {
      * @return the saved entity
      */
     default E save(E entity) {
-        if (Objects.isNull(em().getEntityManagerFactory()
-            .getPersistenceUnitUtil().getIdentifier(entity))) {
-            em().persist(entity);
-        } else {
-            em().merge(entity);
-        }
+        store(entity);
+        CacheInvalidator.invalidate(em(), entity.getClass());
         return entity;
     }
 
@@ -51,4 +54,72 @@ public interface SaveTrait<E> extends EntityManagerAware {
         return entity;
     }
 
+
+    /**
+     * Save the given entities by batch.
+     * The persistence context is flushed and cleared every 100 entities.
+     * @param entities the entities to be saved
+     * @return the number of saved entities
+     */
+    default long saveAll(Iterable<E> entities) {
+        return saveAll(StreamSupport.stream(entities.spliterator(), false), 100);
+    }
+
+
+    /**
+     * Save the given entities by batch.
+     * The persistence context is flushed and cleared every {@code batchSize} entities and at the end,
+     * so entities managed before this call are also detached.
+     * The JDBC batch size of the provider is set to {@code batchSize} during this call, if supported.
+     * The caches of the saved entity types are invalidated once per batch, and the given stream is closed.
+     * @param entities the entities to be saved
+     * @param batchSize the number of entities to be flushed at once
+     * @return the number of saved entities
+     */
+    default long saveAll(Stream<E> entities, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive. " + batchSize);
+        }
+        Provider provider = Provider.of(em());
+        Set<Class<?>> types = new HashSet<>();
+        Integer previous = provider.jdbcBatchSize(em(), batchSize);
+        try (entities) {
+            long count = 0;
+            for (Iterator<E> it = entities.iterator(); it.hasNext(); ) {
+                E entity = it.next();
+                store(entity);
+                types.add(entity.getClass());
+                if (++count % batchSize == 0) {
+                    em().flush();
+                    em().clear();
+                    invalidate(types);
+                }
+            }
+            if (count % batchSize != 0) {
+                em().flush();
+                em().clear();
+            }
+            return count;
+        } finally {
+            invalidate(types);
+            provider.jdbcBatchSize(em(), previous);
+        }
+    }
+
+
+    private void store(E entity) {
+        if (Objects.isNull(em().getEntityManagerFactory()
+            .getPersistenceUnitUtil().getIdentifier(entity))) {
+            em().persist(entity);
+        } else {
+            em().merge(entity);
+        }
+    }
+
+
+    private void invalidate(Set<Class<?>> types) {
+        types.forEach(type -> CacheInvalidator.invalidate(em(), type));
+        types.clear();
+    }
+
 }
@@ -25,4 +25,8 @@ module jpa.fluent.query {
     exports com.mammb.code.jpa.entity;
 
     requires static jakarta.persistence;
+    requires java.management;
+    requires jdk.jfr;
+
+    uses com.mammb.code.jpa.fluent.query.QueryListener;
 }
@@ -62,4 +62,13 @@ class PaginationTest {
         assertTrue(pagination.isTotalElementsEnable());
     }
 
+    @Test
+    void testPaginationNotExactTotal() {
+        var contents = IntStream.rangeClosed(1, 15).mapToObj(String::valueOf).toList();
+        var pagination = Pagination.of(Page.of(contents, 60, false, SlicePoint.of().withNumber(3)));
+        assertFalse(pagination.isTotalExact());
+        assertFalse(pagination.isLastPageEnable());
+        assertEquals(4, pagination.getTotalPages());
+        assertTrue(pagination.isNextPageEnable());
+    }
 }
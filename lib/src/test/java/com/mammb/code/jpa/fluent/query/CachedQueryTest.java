@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import com.mammb.code.jpa.fluent.test.entity.Project;
+import com.mammb.code.jpa.fluent.test.entity.Tag;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedQueryTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() { em.close(); emf.close(); }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        createIssues();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testCachedList() {
+        var cache = ResultCache.of(10);
+        var query = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("foo"))
+            .cached(Duration.ofMinutes(1), cache);
+
+        assertEquals(2, query.toList().on(em).size());
+        persistIssue("foo", null);
+        assertEquals(2, query.toList().on(em).size());
+
+        CacheInvalidator.invalidate(Tag.class);
+        assertEquals(2, query.toList().on(em).size());
+
+        CacheInvalidator.invalidate(Issue.class);
+        assertEquals(3, query.toList().on(em).size());
+        assertThrows(UnsupportedOperationException.class, () -> query.toList().on(em).clear());
+    }
+
+
+    @Test
+    void testCachedSingle() {
+        var cache = ResultCache.of(10);
+        var query = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("bar"))
+            .cached(Duration.ofMinutes(1), cache);
+
+        assertEquals("bar", query.toSingle().on(em).getTitle());
+        assertTrue(query.toOptional().on(em).isPresent());
+        assertSame(query.toSingle().on(em), query.toOptional().on(em).get());
+    }
+
+
+    @Test
+    void testCachedEntityManagedByCaller() {
+        var cache = ResultCache.of(10);
+        var query = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("foo"))
+            .cached(Duration.ofMinutes(1), cache);
+
+        List<Issue> first = query.toList().on(em);
+        em.clear();
+        List<Issue> second = query.toList().on(em);
+        assertEquals(2, second.size());
+        assertTrue(second.stream().allMatch(em::contains));
+        assertTrue(second.stream().noneMatch(issue -> first.stream().anyMatch(e -> e == issue)));
+        assertEquals(first.stream().map(Issue::getId).toList(), second.stream().map(Issue::getId).toList());
+    }
+
+
+    @Test
+    void testInvalidateByPathNavigation() {
+        var cache = ResultCache.of(10);
+        var query = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getProject().getName().eq("project1"))
+            .cached(Duration.ofMinutes(1), cache);
+
+        assertEquals(1, query.toList().on(em).size());
+        em.createQuery("update Project p set p.name = 'project1'").executeUpdate();
+        em.clear();
+        assertEquals(1, query.toList().on(em).size());
+
+        CacheInvalidator.invalidate(Project.class);
+        assertEquals(3, query.toList().on(em).size());
+    }
+
+
+    @Test
+    void testCapturedValue() {
+        var cache = ResultCache.of(10);
+        for (String title : List.of("foo", "bar")) {
+            var list = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq(title))
+                .cached(Duration.ofMinutes(1), cache)
+                .toList().on(em);
+            assertTrue(list.stream().allMatch(issue -> issue.getTitle().equals(title)));
+        }
+    }
+
+
+    private void createIssues() {
+        persistIssue("foo", "project1");
+        persistIssue("foo", "project2");
+        persistIssue("bar", "project3");
+        em.flush();
+    }
+
+
+    private void persistIssue(String title, String projectName) {
+        var issue = new Issue();
+        issue.setTitle(title);
+        if (projectName != null) {
+            var project = new Project();
+            project.setName(projectName);
+            issue.setProject(project);
+        }
+        em.persist(issue);
+        em.flush();
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledQueryTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() { em.close(); emf.close(); }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        createIssues();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testBind() {
+        var cache = CompiledQueryCache.of(10);
+        var compiled = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq(Filters.param(String.class, "title")))
+            .compile(cache);
+
+        List<Issue> foo = compiled.bind("title", "foo").toList().on(em);
+        List<Issue> bar = compiled.bind("title", "bar").toList().on(em);
+
+        assertEquals(3, foo.size());
+        assertTrue(foo.stream().allMatch(issue -> issue.getTitle().equals("foo")));
+        assertEquals(2, bar.size());
+        assertTrue(bar.stream().allMatch(issue -> issue.getTitle().equals("bar")));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+
+    @Test
+    void testSameShape() {
+        var cache = CompiledQueryCache.of(10);
+        for (int i = 0; i < 3; i++) {
+            var count = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq(Filters.param(String.class, "title")))
+                .compile(cache)
+                .bind("title", "baz")
+                .count().on(em);
+            assertEquals(3L, count);
+        }
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+
+    @Test
+    void testCapturedValue() {
+        var cache = CompiledQueryCache.of(10);
+        for (String title : List.of("foo", "bar", "foo")) {
+            Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq(title))
+                .compile(cache)
+                .toList().on(em);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+
+    @Test
+    void testPage() {
+        var cache = CompiledQueryCache.of(10);
+        var page = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq(Filters.param(String.class, "title")))
+            .compile(cache)
+            .bind("title", "foo")
+            .toPage(SlicePoint.of(0, 2)).on(em);
+
+        assertEquals(2, page.getContent().size());
+        assertEquals(3L, page.getTotalElements());
+        assertEquals(2, cache.size());
+    }
+
+
+    @Test
+    void testCountCache() {
+        var countCache = CountCache.of(10, Duration.ofMinutes(1));
+        var compiled = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq(Filters.param(String.class, "title")))
+            .compile(CompiledQueryCache.of(10));
+
+        assertEquals(3L, compiled.bind("title", "foo").count(countCache).on(em));
+        assertEquals(3L, compiled.bind("title", "foo").count(countCache).on(em));
+        assertEquals(2L, compiled.bind("title", "bar").count(countCache).on(em));
+        assertEquals(2, countCache.getMissCount());
+        assertEquals(1, countCache.getHitCount());
+
+        CacheInvalidator.invalidate(Issue.class);
+        assertEquals(3L, compiled.bind("title", "foo").count(countCache).on(em));
+        assertEquals(3, countCache.getMissCount());
+    }
+
+
+    @Test
+    void testEviction() {
+        var cache = CompiledQueryCache.of(1);
+        assertEquals(8, Querying.of(IssueModel.root()).compile(cache).toList().on(em).size());
+        // the evicted name is reused by the count query
+        assertEquals(8L, Querying.of(IssueModel.root()).compile(cache).count().on(em));
+        assertEquals(8, Querying.of(IssueModel.root()).compile(cache).toList().on(em).size());
+
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+
+    @Test
+    void testConcurrentCompile() throws Exception {
+        var cache = CompiledQueryCache.of(10);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var futures = new ArrayList<Future<Long>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    var other = emf.createEntityManager();
+                    try {
+                        return Querying.of(IssueModel.root()).compile(cache).count().on(other);
+                    } finally {
+                        other.close();
+                    }
+                }));
+            }
+            for (Future<Long> future : futures) {
+                assertEquals(0L, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.size());
+        assertEquals(8, cache.getHitCount() + cache.getMissCount());
+    }
+
+
+    private void createIssues() {
+        for (String title : List.of("foo", "foo", "foo", "bar", "bar", "baz", "baz", "baz")) {
+            var issue = new Issue();
+            issue.setTitle(title);
+            em.persist(issue);
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.Fixtures;
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.Persistence;
+import jakarta.persistence.PersistenceUnitUtil;
+import org.junit.jupiter.api.*;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FetchTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() { em.close(); emf.close(); }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        var project = Fixtures.createProject("FetchTest", em);
+        for (int i = 0; i < 5; i++) {
+            Fixtures.createIssue(project, "FetchTest" + i, em);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testFetch() {
+        List<Issue> issues = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().like("FetchTest"))
+            .fetch(issue -> issue.getProject())
+            .fetch(issue -> issue.getJournals())
+            .toList().on(em);
+
+        PersistenceUnitUtil util = emf.getPersistenceUnitUtil();
+        assertEquals(5, issues.size());
+        assertEquals(5, issues.stream().distinct().count());
+        assertTrue(issues.stream().allMatch(issue -> util.isLoaded(issue, "project")));
+        // the batch fetch loads the collections of all the results on the first access
+        assertTrue(issues.stream().allMatch(issue -> issue.getJournals().size() == 2));
+        assertTrue(issues.stream().allMatch(issue -> util.isLoaded(issue, "journals")));
+    }
+
+
+    @Test
+    void testFetchKeepsUnflushedChanges() {
+        em.setFlushMode(FlushModeType.COMMIT);
+        try {
+            List<Issue> issues = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().like("FetchTest"))
+                .toList().on(em);
+            issues.forEach(issue -> issue.setDescription("changed"));
+
+            Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().like("FetchTest"))
+                .fetch(issue -> issue.getJournals())
+                .toList().on(em)
+                .forEach(issue -> issue.getJournals().size());
+            assertTrue(issues.stream().allMatch(issue -> issue.getDescription().equals("changed")));
+        } finally {
+            em.setFlushMode(FlushModeType.AUTO);
+        }
+    }
+
+
+    @Test
+    void testFetchWithPage() {
+        Page<Issue> page = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().like("FetchTest"))
+            .fetch(issue -> issue.getJournals())
+            .toPage(SlicePoint.of(0, 3)).on(em);
+
+        assertEquals(5, page.getTotalElements());
+        assertEquals(3, page.getContent().size());
+        assertEquals(3, page.getContent().stream().distinct().count());
+        assertTrue(page.getContent().stream().allMatch(issue -> issue.getJournals().size() == 2));
+    }
+
+
+    @Test
+    void testFetchWithoutLazyLoad() {
+        try (var detector = LazyLoadDetector.open(em, 1)) {
+            Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().like("FetchTest"))
+                .fetch(issue -> issue.getJournals())
+                .toList().on(em)
+                .forEach(issue -> issue.getJournals().size());
+            assertTrue(detector.violations().isEmpty());
+        }
+    }
+
+
+    @Test
+    void testFetchUnsupported() {
+        var querying = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().like("FetchTest"))
+            .fetch(issue -> issue.getJournals());
+        assertThrows(UnsupportedOperationException.class, () -> querying.toCursorStream().on(em));
+        assertThrows(UnsupportedOperationException.class, () -> querying.toSlice(KeysetPoint.of(3)).on(em));
+        assertThrows(UnsupportedOperationException.class, () -> querying.compile().toList().on(em));
+        assertThrows(UnsupportedOperationException.class, () -> querying.cached(Duration.ofMinutes(1)).toList().on(em));
+
+        // the single-valued association is fetched by the join
+        assertEquals(5, Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().like("FetchTest"))
+            .fetch(issue -> issue.getProject())
+            .toSlice(KeysetPoint.of(5)).on(em).getContent().size());
+    }
+
+
+    @Test
+    void testFetchNotAssociation() {
+        assertThrows(IllegalArgumentException.class, () -> Querying.of(IssueModel.root())
+            .fetch(issue -> issue.getTitle())
+            .toList().on(em));
+    }
+
+}
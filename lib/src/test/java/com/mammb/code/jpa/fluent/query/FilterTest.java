@@ -119,4 +119,26 @@ public class FilterTest {
 
     }
 
+
+
+    @Test
+    void testFlattenedFilter() {
+        var project1 = Fixtures.createProject("project1", em);
+        Fixtures.createIssue(project1, "issue1", em);
+        Fixtures.createIssue(project1, "issue2", em);
+
+        Querying<Issue, IssueModel.Root_, Issue> query = Querying.of(IssueModel.root());
+        Filter<Issue, IssueModel.Root_> or = Filter.empty();
+        for (int i = 0; i < 30; i++) {
+            query = query.filter(issue -> issue.getTitle().like("issue"));
+            String title = "issue" + i;
+            or = or.or(issue -> issue.getTitle().eq(title));
+        }
+        assertEquals(2, query.filter(or).toList().on(em).size());
+
+        var composite = (Filter.Composition.Composite<Issue, IssueModel.Root_>) or;
+        assertEquals(30, composite.operands().size());
+        assertEquals(Filter.Composition.Operator.OR, composite.operator());
+    }
+
 }
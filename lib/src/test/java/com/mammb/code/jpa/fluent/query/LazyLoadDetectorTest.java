@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.Fixtures;
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyLoadDetectorTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() { em.close(); emf.close(); }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        var project = Fixtures.createProject("LazyLoadDetectorTest", em);
+        for (int i = 0; i < 3; i++) {
+            Fixtures.createIssue(project, "LazyLoadDetectorTest" + i, em);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testDetect() {
+        var detector = LazyLoadDetector.open(em, 1);
+        List<Issue> issues = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().like("LazyLoadDetectorTest"))
+            .toList().on(em);
+        issues.forEach(issue -> issue.getJournals().size());
+
+        List<LazyLoadDetector.Violation> violations = detector.violations();
+        assertEquals(1, violations.size());
+        LazyLoadDetector.Violation violation = violations.get(0);
+        assertEquals(Issue.class, violation.rootClass());
+        assertEquals("journals", violation.attribute());
+        assertEquals(3, violation.loads());
+        assertTrue(violation.callSite().contains("LazyLoadDetectorTest.testDetect"));
+
+        var e = assertThrows(IllegalStateException.class, detector::close);
+        assertTrue(e.getMessage().contains("Issue.journals"));
+    }
+
+
+    @Test
+    void testWithinThreshold() {
+        List<LazyLoadDetector.Violation> reported = new ArrayList<>();
+        try (var detector = LazyLoadDetector.open(em, 1, reported::add)) {
+            List<Issue> issues = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().like("LazyLoadDetectorTest"))
+                .toList().on(em);
+            issues.get(0).getJournals().size();
+            assertTrue(detector.violations().isEmpty());
+        }
+        assertTrue(reported.isEmpty());
+
+        em.clear();
+        try (var detector = LazyLoadDetector.open(em, 2, reported::add)) {
+            Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().like("LazyLoadDetectorTest"))
+                .toList().on(em)
+                .forEach(issue -> issue.getJournals().size());
+            assertEquals(1, detector.violations().size());
+        }
+        assertEquals(1, reported.size());
+        assertFalse(LazyLoadDetector.active());
+    }
+
+
+    @Test
+    void testCloseOutOfOrder() {
+        List<LazyLoadDetector.Violation> reported = new ArrayList<>();
+        var outer = LazyLoadDetector.open(em, 0, reported::add);
+        var inner = LazyLoadDetector.open(em, 0, reported::add);
+        Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().like("LazyLoadDetectorTest"))
+            .toList().on(em)
+            .forEach(issue -> issue.getJournals().size());
+
+        assertThrows(IllegalStateException.class, outer::close);
+        assertFalse(LazyLoadDetector.active());
+        // the inner detector is closed with the outer one, without reporting
+        assertTrue(reported.isEmpty());
+        assertDoesNotThrow(inner::close);
+    }
+
+
+    @Test
+    void testMaxTracked() {
+        System.setProperty(LazyLoadDetector.MAX_TRACKED, "2");
+        try (var detector = LazyLoadDetector.open(em, 0, violation -> { })) {
+            Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().like("LazyLoadDetectorTest"))
+                .toList().on(em)
+                .forEach(issue -> issue.getJournals().size());
+            // the associations of the first issue only are tracked, out of the three issues
+            int loads = detector.violations().stream().mapToInt(LazyLoadDetector.Violation::loads).sum();
+            assertTrue(loads >= 1 && loads <= 2);
+        } finally {
+            System.clearProperty(LazyLoadDetector.MAX_TRACKED);
+        }
+    }
+
+}
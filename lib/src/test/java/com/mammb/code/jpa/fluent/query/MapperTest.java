@@ -17,6 +17,7 @@ package com.mammb.code.jpa.fluent.query;
 
 import com.mammb.code.jpa.fluent.test.Fixtures;
 import com.mammb.code.jpa.fluent.test.Mappers;
+import com.mammb.code.jpa.fluent.test.entity.Issue;
 import com.mammb.code.jpa.fluent.test.entity.IssueModel;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
@@ -26,6 +27,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 class MapperTest {
@@ -65,4 +67,55 @@ class MapperTest {
 
     }
 
+
+    @Test void testGroupingEmpty() {
+
+        assertEquals(List.of(), Grouping.<Issue, IssueModel.Root_>empty().apply(null));
+
+        // Hibernate rejects the null grouping list
+        var hibernateEmf = Persistence.createEntityManagerFactory("hibernateUnit");
+        var hibernateEm = hibernateEmf.createEntityManager();
+        try {
+            hibernateEm.getTransaction().begin();
+            // the shared fixture tags may already have ids assigned by the other unit
+            var entity = new Issue();
+            entity.setTitle("issue1");
+            entity.setPriority(1);
+            hibernateEm.persist(entity);
+
+            Mappers.IntegerResult result = Querying.of(IssueModel.root())
+                .map(Mappers.integerResult(issue -> issue.getPriority().min()))
+                .toSingle().on(hibernateEm);
+            assertEquals(1, result.value());
+            hibernateEm.getTransaction().rollback();
+        } finally {
+            hibernateEm.close();
+            hibernateEmf.close();
+        }
+
+    }
+
+
+    @Test void testImmutable() {
+        Mapper<Issue, IssueModel.Root_, Issue> mapper = Mapper.of();
+        Mapper<Issue, IssueModel.Root_, Issue> distinct = mapper.distinct(true);
+
+        assertNotSame(mapper, distinct);
+        assertEquals(distinct, mapper.distinct(true));
+        assertEquals(distinct.hashCode(), mapper.distinct(true).hashCode());
+        assertNotEquals(mapper, distinct);
+        assertEquals(Mapper.<Issue, IssueModel.Root_>of(), mapper);
+    }
+
+
+    @Test void testHintsImmutable() {
+        Hints hints = Hints.empty();
+        Hints added = hints.add(Hint.of("foo", 1));
+
+        assertNotSame(hints, added);
+        assertEquals(Hints.empty(), hints);
+        assertEquals(Hints.of("foo", 1), added);
+        assertEquals(Hints.of("foo", 1).hashCode(), added.hashCode());
+    }
+
 }
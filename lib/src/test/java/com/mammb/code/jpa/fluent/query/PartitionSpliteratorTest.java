@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionSpliteratorTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+        // the partitions are read on other EntityManagers, so the issues must be committed
+        em.getTransaction().begin();
+        for (int i = 0; i < 50; i++) {
+            var issue = new Issue();
+            issue.setTitle("PartitionSpliteratorTest");
+            issue.setPriority(i);
+            em.persist(issue);
+        }
+        em.getTransaction().commit();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() {
+        em.getTransaction().begin();
+        QueryBuilder.delete(em, IssueModel.root(), issue -> issue.getTitle().eq("PartitionSpliteratorTest"));
+        em.getTransaction().commit();
+        em.close();
+        emf.close();
+    }
+
+
+    @Test
+    void testParallelStream() {
+        try (Stream<Issue> stream = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("PartitionSpliteratorTest"))
+                .toParallelStream(4, 7).on(em)) {
+            assertTrue(stream.isParallel());
+            List<Integer> priorities = stream.map(Issue::getPriority).sorted().toList();
+            assertEquals(50, priorities.size());
+            assertEquals(50, priorities.stream().collect(Collectors.toSet()).size());
+        }
+    }
+
+
+    @Test
+    void testMorePartitionsThanRows() {
+        try (Stream<Issue> stream = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("PartitionSpliteratorTest"))
+                .filter(issue -> issue.getPriority().lt(3))
+                .toParallelStream(100).on(em)) {
+            assertEquals(3, stream.count());
+        }
+    }
+
+
+    @Test
+    void testProjection() {
+        try (Stream<String> stream = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("PartitionSpliteratorTest"))
+                .map(String.class, issue -> issue.getTitle())
+                .toParallelStream(3, 4).on(em)) {
+            assertEquals(50, stream.count());
+        }
+    }
+
+
+    @Test
+    void testSplit() {
+        var ranges = new PartitionSpliterator.Range(Long.MIN_VALUE, Long.MAX_VALUE).split(3);
+        assertEquals(3, ranges.size());
+        assertEquals(Long.MIN_VALUE, ranges.get(0).from());
+        assertEquals(ranges.get(0).to() + 1, ranges.get(1).from());
+        assertEquals(ranges.get(1).to() + 1, ranges.get(2).from());
+        assertEquals(Long.MAX_VALUE, ranges.get(2).to());
+
+        assertEquals(List.of(new PartitionSpliterator.Range(1, 3), new PartitionSpliterator.Range(4, 6),
+            new PartitionSpliterator.Range(7, 10)), new PartitionSpliterator.Range(1, 10).split(3));
+        assertEquals(2, new PartitionSpliterator.Range(1, 2).split(5).size());
+    }
+
+
+    @Test
+    void testEmpty() {
+        try (Stream<Issue> stream = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("nothing"))
+                .toParallelStream(4).on(em)) {
+            assertEquals(0, stream.count());
+        }
+    }
+
+
+    @Test
+    void testShortCircuit() {
+        try (Stream<Issue> stream = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("PartitionSpliteratorTest"))
+                .toParallelStream(4, 5).on(em)) {
+            assertTrue(stream.anyMatch(issue -> issue.getPriority() >= 0));
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueriesTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+        // the queries read on other EntityManagers, so the issues must be committed
+        em.getTransaction().begin();
+        for (String title : List.of("QueriesTest1", "QueriesTest1", "QueriesTest2")) {
+            var issue = new Issue();
+            issue.setTitle(title);
+            em.persist(issue);
+        }
+        em.getTransaction().commit();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() {
+        em.getTransaction().begin();
+        QueryBuilder.delete(em, IssueModel.root(), issue -> issue.getTitle().like("QueriesTest"));
+        em.getTransaction().commit();
+        em.close();
+        emf.close();
+    }
+
+
+    @Test
+    void testOnAsync() {
+        List<Issue> issues = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("QueriesTest1"))
+            .toList().onAsync(emf).join();
+        assertEquals(2, issues.size());
+    }
+
+
+    @Test
+    void testAll() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            String result = Queries.all(emf, executor,
+                Querying.of(IssueModel.root()).filter(issue -> issue.getTitle().eq("QueriesTest1")).toList(),
+                Querying.of(IssueModel.root()).filter(issue -> issue.getTitle().eq("QueriesTest2")).count(),
+                Querying.of(IssueModel.root()).filter(issue -> issue.getTitle().like("QueriesTest"))
+                    .toPage(SlicePoint.of(0, 2)),
+                (list, count, page) -> list.size() + ":" + count + ":" + page.getTotalElements()).join();
+            assertEquals("2:1:3", result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    void testAllOfList() {
+        List<Long> counts = Queries.<Long>all(emf, List.of(
+            Querying.of(IssueModel.root()).filter(issue -> issue.getTitle().eq("QueriesTest1")).count(),
+            Querying.of(IssueModel.root()).filter(issue -> issue.getTitle().eq("QueriesTest2")).count())).join();
+        assertEquals(List.of(2L, 1L), counts);
+    }
+
+
+    @Test
+    void testDefaultExecutorThreads() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        assertEquals(processors, Queries.threads(null));
+        assertEquals(3, Queries.threads("3"));
+        assertEquals(processors, Queries.threads("0"));
+        assertEquals(processors, Queries.threads("-1"));
+        assertEquals(processors, Queries.threads("many"));
+    }
+
+
+    @Test
+    void testDefaultExecutorBounded() throws InterruptedException {
+        ExecutorService executor = Queries.createDefaultExecutor(2);
+        var running = new AtomicInteger();
+        var peak = new AtomicInteger();
+        var latch = new CountDownLatch(6);
+        try {
+            for (int i = 0; i < 6; i++) {
+                executor.execute(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    latch.countDown();
+                });
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(2, peak.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    void testAllFailure() {
+        var future = Queries.all(emf,
+            Querying.of(IssueModel.root()).count(),
+            Querying.of(IssueModel.root()).toSingle(),
+            (count, single) -> single);
+        assertThrows(CompletionException.class, future::join);
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import com.mammb.code.jpa.fluent.test.entity.Journal;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryBuilderTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() { em.close(); emf.close(); }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        createIssues();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testPageCountElision() {
+        var counted = new AtomicInteger();
+        var first = page(SlicePoint.of(0, 10), counted);
+        assertEquals(5, first.getContent().size());
+        assertEquals(5, first.getTotalElements());
+        assertEquals(0, counted.get());
+
+        var last = page(SlicePoint.of(1, 3), counted);
+        assertEquals(2, last.getContent().size());
+        assertEquals(5, last.getTotalElements());
+        assertEquals(0, counted.get());
+
+        var full = page(SlicePoint.of(0, 5), counted);
+        assertEquals(5, full.getTotalElements());
+        assertEquals(1, counted.get());
+
+        var over = page(SlicePoint.of(2, 5), counted);
+        assertTrue(over.getContent().isEmpty());
+        assertEquals(5, over.getTotalElements());
+        assertEquals(2, counted.get());
+    }
+
+
+    @Test
+    void testPageWithExecutor() {
+        // the count query reads on another EntityManager, so the issues must be committed
+        em.getTransaction().commit();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            var page = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+                .toPage(SlicePoint.of(0, 2), executor).on(em);
+            assertEquals(2, page.getContent().size());
+            assertEquals(5, page.getTotalElements());
+            assertEquals(3, page.getTotalPages());
+        } finally {
+            executor.shutdown();
+            em.getTransaction().begin();
+            QueryBuilder.delete(em, IssueModel.root(), issue -> issue.getTitle().eq("QueryBuilderTest"));
+            em.getTransaction().commit();
+            em.getTransaction().begin();
+        }
+    }
+
+
+    @Test
+    void testPageWithExecutorDerived() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var latch = new CountDownLatch(1);
+        try {
+            // the count can not start until released, so the page would block if the count were awaited
+            executor.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            var page = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+                .toPage(SlicePoint.of(0, 10), executor).on(em);
+            assertEquals(5, page.getTotalElements());
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+
+    @Test
+    void testPageWithExecutorSaturated() throws InterruptedException {
+        em.getTransaction().commit();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var latch = new CountDownLatch(1);
+        try {
+            // the only thread of the executor is occupied, so the count is run on the calling thread
+            executor.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            var page = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+                .toPage(SlicePoint.of(0, 2), executor).on(em);
+            assertEquals(5, page.getTotalElements());
+
+            var rejected = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+                .toPage(SlicePoint.of(0, 2), command -> { throw new RejectedExecutionException(); }).on(em);
+            assertEquals(5, rejected.getTotalElements());
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            em.getTransaction().begin();
+            QueryBuilder.delete(em, IssueModel.root(), issue -> issue.getTitle().eq("QueryBuilderTest"));
+            em.getTransaction().commit();
+            em.getTransaction().begin();
+        }
+    }
+
+
+    @Test
+    void testPageCapped() {
+        var capped = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+            .toPage(SlicePoint.of(0, 2), CountStrategy.capped(3)).on(em);
+        assertEquals(2, capped.getContent().size());
+        assertEquals(3, capped.getTotalElements());
+        assertFalse(capped.isTotalExact());
+        assertTrue(capped.hasNext());
+
+        var exact = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+            .toPage(SlicePoint.of(0, 2), CountStrategy.capped(5)).on(em);
+        assertEquals(5, exact.getTotalElements());
+        assertTrue(exact.isTotalExact());
+    }
+
+
+    @Test
+    void testPageCached() {
+        var nanos = new AtomicLong();
+        var cache = CountCache.of(10, Duration.ofSeconds(10), nanos::get);
+        var strategy = CountStrategy.exact().cached(cache);
+        for (int i = 0; i < 3; i++) {
+            var page = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+                .toPage(SlicePoint.of(i, 2), strategy).on(em);
+            assertEquals(5, page.getTotalElements());
+        }
+        // the last page is partial, so the count is derived
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+        Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("QueryBuilderTest"))
+            .toPage(SlicePoint.of(0, 2), strategy).on(em);
+        assertEquals(2, cache.getMissCount());
+    }
+
+
+    @Test
+    void testPageCachedInvalidatedByJoin() {
+        var cache = CountCache.of(10, Duration.ofSeconds(10));
+        var query = Querying.of(IssueModel.root())
+            .filter(issue -> issue.joinJournals().getContent().eq("QueryBuilderTest"));
+
+        query.count(cache).on(em);
+        query.count(cache).on(em);
+        assertEquals(1, cache.getMissCount());
+
+        CacheInvalidator.invalidate(Journal.class);
+        query.count(cache).on(em);
+        assertEquals(2, cache.getMissCount());
+    }
+
+
+    @Test
+    void testPageCachedInvalidatedAfterCommit() {
+        var cache = CountCache.of(10, Duration.ofSeconds(10));
+        var strategy = CountStrategy.exact().cached(cache);
+        var query = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("QueryBuilderTest"));
+
+        var writer = emf.createEntityManager();
+        try {
+            writer.getTransaction().begin();
+            CacheInvalidator.invalidate(writer, Issue.class);
+            // loaded before the commit of the writer
+            query.toPage(SlicePoint.of(0, 2), strategy).on(em);
+            query.toPage(SlicePoint.of(0, 2), strategy).on(em);
+            assertEquals(1, cache.getMissCount());
+            writer.getTransaction().commit();
+        } finally {
+            writer.close();
+        }
+        query.toPage(SlicePoint.of(0, 2), strategy).on(em);
+        assertEquals(2, cache.getMissCount());
+    }
+
+
+    private Page<Issue> page(SlicePoint slicePoint, AtomicInteger counted) {
+        Filter<Issue, IssueModel.Root_> filter = issue -> issue.getTitle().eq("QueryBuilderTest");
+        var query = QueryBuilder.query(em, IssueModel.root(), Mapper.of(), filter, Sorts.empty(), Hints.empty());
+        return QueryBuilder.page(query, () -> {
+            counted.incrementAndGet();
+            return QueryBuilder.countQuery(em, IssueModel.root(), filter, Hints.empty()).getSingleResult();
+        }, slicePoint);
+    }
+
+
+    private void createIssues() {
+        for (int i = 0; i < 5; i++) {
+            var issue = new Issue();
+            issue.setTitle("QueryBuilderTest");
+            em.persist(issue);
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryEventTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() { em.close(); emf.close(); }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        for (int i = 0; i < 5; i++) {
+            var issue = new Issue();
+            issue.setTitle("QueryEventTest" + i);
+            em.persist(issue);
+        }
+        em.flush();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testRecording() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            for (String title : List.of("QueryEventTest1", "QueryEventTest2")) {
+                Querying.of(IssueModel.root()).filter(issue -> issue.getTitle().eq(title)).toList().on(em);
+            }
+            try (Stream<Issue> stream = Querying.of(IssueModel.root())
+                    .filter(issue -> issue.getTitle().like("QueryEventTest"))
+                    .toForwardingStream(2).on(em)) {
+                assertEquals(5, stream.count());
+            }
+        });
+
+        assertEquals(5, events.size());
+        assertTrue(events.stream().allMatch(e -> e.getClass("rootClass").getName().equals(Issue.class.getName())));
+
+        RecordedEvent list1 = events.get(0);
+        RecordedEvent list2 = events.get(1);
+        assertEquals("LIST", list1.getString("kind"));
+        assertEquals(1L, list1.getLong("rows"));
+        assertEquals(-1, list1.getInt("maxResults"));
+        // the same shape with the different captured values
+        assertEquals(list1.getString("fingerprint"), list2.getString("fingerprint"));
+
+        RecordedEvent page2 = events.get(3);
+        assertEquals("SLICE", page2.getString("kind"));
+        assertEquals(2, page2.getInt("firstResult"));
+        assertEquals(3, page2.getInt("maxResults"));
+        assertNotEquals(list1.getString("fingerprint"), page2.getString("fingerprint"));
+        assertNotNull(page2.getStackTrace());
+    }
+
+
+    private static List<RecordedEvent> record(Runnable runnable) throws Exception {
+        Path file = Files.createTempFile("query-event", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("com.mammb.code.jpa.fluent.Query").withStackTrace();
+            recording.start();
+            runnable.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                .sorted(Comparator.comparing(RecordedEvent::getStartTime)).toList();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
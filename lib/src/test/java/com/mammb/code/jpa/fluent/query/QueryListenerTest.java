@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.repository.IssueRepository;
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import jakarta.persistence.TypedQuery;
+import org.eclipse.persistence.jpa.JpaQuery;
+import org.junit.jupiter.api.*;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryListenerTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+    static QueryListener listener = new RecordingQueryListener();
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+        QueryListener.register(listener);
+    }
+
+
+    @AfterAll
+    static void tearDownAll() {
+        QueryListener.unregister(listener);
+        em.close();
+        emf.close();
+    }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        for (int i = 0; i < 5; i++) {
+            var issue = new Issue();
+            issue.setTitle("QueryListenerTest");
+            em.persist(issue);
+        }
+        em.flush();
+        RecordingQueryListener.events.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testList() {
+        List<Issue> issues = Querying.of(IssueModel.root()).toList().on(em);
+
+        List<QueryListener.Event> events = RecordingQueryListener.events(Issue.class);
+        assertEquals(1, events.size());
+        QueryListener.Event event = events.get(0);
+        assertEquals(QueryListener.Kind.LIST, event.kind());
+        assertEquals(issues.size(), event.size());
+        assertFalse(event.build().isNegative());
+        assertFalse(event.translate().isNegative());
+        assertTrue(event.execute().compareTo(Duration.ZERO) > 0);
+        assertEquals(event.build().plus(event.translate()).plus(event.execute()), event.total());
+    }
+
+
+    @Test
+    void testSingleAndCount() {
+        Querying.of(IssueModel.root())
+            .filter(issue -> issue.getId().eq(Querying.of(IssueModel.root()).toList().on(em).get(0).getId()))
+            .toSingle().on(em);
+        Querying.of(IssueModel.root()).count().on(em);
+
+        List<QueryListener.Kind> kinds = RecordingQueryListener.events(Issue.class).stream()
+            .map(QueryListener.Event::kind).toList();
+        assertEquals(List.of(QueryListener.Kind.LIST, QueryListener.Kind.SINGLE, QueryListener.Kind.COUNT), kinds);
+    }
+
+
+    @Test
+    void testPage() {
+        Page<Issue> page = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("QueryListenerTest"))
+            .toPage(SlicePoint.of(0, 2)).on(em);
+
+        List<QueryListener.Event> events = RecordingQueryListener.events(Issue.class);
+        assertEquals(2, events.size());
+        assertEquals(QueryListener.Kind.SLICE, events.get(0).kind());
+        assertEquals(2, events.get(0).size());
+        assertEquals(QueryListener.Kind.COUNT, events.get(1).kind());
+        assertEquals(5, page.getTotalElements());
+    }
+
+
+    @Test
+    void testStreamRefuel() {
+        try (Stream<Issue> stream = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("QueryListenerTest"))
+                .toForwardingStream(2).on(em)) {
+            assertEquals(5, stream.count());
+        }
+
+        List<QueryListener.Event> events = RecordingQueryListener.events(Issue.class);
+        assertEquals(3, events.size());
+        assertTrue(events.stream().allMatch(e -> e.kind() == QueryListener.Kind.SLICE));
+        assertEquals(List.of(3L, 3L, 1L), events.stream().map(QueryListener.Event::size).toList());
+        // the query is built once, and executed page by page
+        assertTrue(events.stream().skip(1).allMatch(e -> e.build().isZero() && e.translate().isZero()));
+    }
+
+
+    @Test
+    void testUpdateAndDelete() {
+        int updated = Updating.of(IssueModel.root())
+            .set(issue -> issue.getPriority(), 3)
+            .filter(issue -> issue.getTitle().eq("QueryListenerTest"))
+            .execute().on(em);
+        int deleted = QueryBuilder.delete(em, IssueModel.root(), issue -> issue.getTitle().eq("QueryListenerTest"));
+
+        List<QueryListener.Event> events = RecordingQueryListener.events(Issue.class);
+        assertEquals(List.of(QueryListener.Kind.UPDATE, QueryListener.Kind.UPDATE),
+            events.stream().map(QueryListener.Event::kind).toList());
+        assertEquals(List.of((long) updated, (long) deleted),
+            events.stream().map(QueryListener.Event::size).toList());
+        assertEquals(5, deleted);
+    }
+
+
+    @Test
+    void testFind() {
+        var repository = new IssueRepository() {
+            @Override
+            public EntityManager em() { return em; }
+        };
+        Long id = Querying.of(IssueModel.root()).toList().on(em).get(0).getId();
+        em.clear();
+        RecordingQueryListener.events.clear();
+
+        assertTrue(repository.get(id).isPresent());
+        assertTrue(repository.get(-1L).isEmpty());
+        em.clear();
+        assertEquals(1, repository.getMap(List.of(id, -1L)).size());
+
+        List<QueryListener.Event> events = RecordingQueryListener.events(Issue.class);
+        assertEquals(List.of(QueryListener.Kind.FIND, QueryListener.Kind.FIND, QueryListener.Kind.LIST),
+            events.stream().map(QueryListener.Event::kind).toList());
+        assertEquals(List.of(1L, 0L, 1L), events.stream().map(QueryListener.Event::size).toList());
+    }
+
+
+    @Test
+    void testUnwrap() {
+        TypedQuery<Issue> query = QueryBuilder.query(em, IssueModel.root(), Mapper.of(),
+            Filter.empty(), Sorts.empty(), Hints.empty());
+
+        assertTrue(QueryTrace.isTraced(query));
+        assertSame(QueryTrace.traced(query, Issue.class, 0, 0, false), query);
+        assertFalse(QueryTrace.isTraced(query.unwrap(JpaQuery.class)));
+        assertNotNull(query.unwrap(JpaQuery.class).getDatabaseQuery());
+    }
+
+
+    @Test
+    void testForeignProxy() {
+        TypedQuery<?> target = em.createQuery("select i from Issue i", Issue.class);
+        @SuppressWarnings("unchecked")
+        TypedQuery<Issue> foreign = (TypedQuery<Issue>) Proxy.newProxyInstance(TypedQuery.class.getClassLoader(),
+            new Class<?>[] { TypedQuery.class }, (proxy, method, args) -> method.invoke(target, args));
+
+        TypedQuery<Issue> traced = QueryTrace.traced(foreign, Issue.class, 0, 0, false);
+        assertNotSame(foreign, traced);
+        assertEquals(5, traced.getResultList().size());
+        assertEquals(1, RecordingQueryListener.events(Issue.class).size());
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryStatisticsTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+    static QueryStatistics statistics = QueryStatistics.shared();
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() {
+        statistics.setEnabled(false);
+        statistics.setSlowQueryThreshold(Duration.ofSeconds(1));
+        statistics.reset();
+        em.close();
+        emf.close();
+    }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        for (int i = 0; i < 5; i++) {
+            var issue = new Issue();
+            issue.setTitle("QueryStatisticsTest" + (i % 2));
+            em.persist(issue);
+        }
+        em.flush();
+        statistics.reset();
+        statistics.setEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        statistics.setEnabled(false);
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testTop() {
+        for (int i = 0; i < 10; i++) {
+            String title = "QueryStatisticsTest" + (i % 2);
+            Querying.of(IssueModel.root()).filter(issue -> issue.getTitle().eq(title)).toList().on(em);
+        }
+        Querying.of(IssueModel.root()).count().on(em);
+
+        assertEquals(11, statistics.getExecutionCount());
+        List<QueryStatistics.Entry> top = statistics.top(10);
+        assertEquals(2, top.size());
+
+        QueryStatistics.Entry list = top.stream()
+            .filter(e -> e.kind() == QueryListener.Kind.LIST).findFirst().orElseThrow();
+        assertEquals(Issue.class, list.rootClass());
+        assertEquals(10, list.count());
+        assertEquals(25, list.rows());
+        assertTrue(list.p50().compareTo(list.p99()) <= 0);
+        assertTrue(list.p99().compareTo(list.max()) <= 0);
+        assertTrue(list.max().compareTo(list.total()) <= 0);
+        assertTrue(top.get(0).total().compareTo(top.get(1).total()) >= 0);
+    }
+
+
+    @Test
+    void testSlowQuery() {
+        statistics.setSlowQueryThreshold(Duration.ZERO);
+        try {
+            Querying.of(IssueModel.root()).toList().on(em);
+        } finally {
+            statistics.setSlowQueryThreshold(Duration.ofSeconds(1));
+        }
+
+        List<QueryStatistics.SlowQuery> slowQueries = statistics.slowQueries();
+        assertEquals(1, slowQueries.size());
+        QueryStatistics.SlowQuery slow = slowQueries.get(0);
+        assertTrue(slow.sql().toUpperCase().contains("SELECT"));
+        assertTrue(slow.callSite().contains("QueryStatisticsTest.testSlowQuery"));
+    }
+
+
+    @Test
+    void testMBean() throws Exception {
+        QueryStatistics.registerMBean();
+        QueryStatistics.registerMBean();
+        Querying.of(IssueModel.root()).toList().on(em);
+
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var name = new ObjectName(QueryStatistics.OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(name, "ExecutionCount"));
+        assertEquals(1, ((String[]) server.getAttribute(name, "TopQueries")).length);
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "ExecutionCount"));
+    }
+
+}
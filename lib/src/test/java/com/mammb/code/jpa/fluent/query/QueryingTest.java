@@ -26,6 +26,8 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
 import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -196,6 +198,60 @@ class QueryingTest {
         assertFalse(issues.hasNext());
     }
 
+    /**
+     * <pre>
+     * SELECT ... FROM ISSUE WHERE ((TITLE > ?) OR ((TITLE = ?) AND (ID < ?))) ORDER BY TITLE ASC, ID DESC LIMIT 4
+     * </pre>
+     */
+    @Test
+    void testKeysetSlice() {
+        var querying = Querying.of(IssueModel.root())
+            .sorted(issue -> issue.getTitle().asc(), issue -> issue.getId().desc());
+        List<Issue> expected = querying.toList().on(em);
+
+        List<Issue> actual = new ArrayList<>();
+        KeysetSlice<Issue> slice = querying.toSlice(KeysetPoint.of(3)).on(em);
+        actual.addAll(slice.getContent());
+        while (slice.hasNext()) {
+            slice = querying.toSlice(slice.nextPoint()).on(em);
+            actual.addAll(slice.getContent());
+        }
+        assertEquals(2, slice.getNumber());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testKeysetSliceNullableKey() {
+        List<Issue> issues = Querying.of(IssueModel.root()).toList().on(em);
+        issues.get(1).setDescription("b");
+        issues.get(4).setDescription("a");
+        issues.get(6).setDescription("b");
+        em.flush();
+
+        // the null is ordered as the greatest value
+        Comparator<Issue> ascending = Comparator.comparing(Issue::getDescription,
+            Comparator.nullsLast(Comparator.<String>naturalOrder())).thenComparing(Issue::getId);
+        assertEquals(issues.stream().sorted(ascending).toList(),
+            keysetAll(Querying.of(IssueModel.root()).sorted(issue -> issue.getDescription().asc())));
+
+        Comparator<Issue> descending = Comparator.comparing(Issue::getDescription,
+            Comparator.nullsFirst(Comparator.<String>reverseOrder())).thenComparing(Issue::getId);
+        assertEquals(issues.stream().sorted(descending).toList(),
+            keysetAll(Querying.of(IssueModel.root()).sorted(issue -> issue.getDescription().desc())));
+    }
+
+
+    private List<Issue> keysetAll(Querying<Issue, IssueModel.Root_, Issue> querying) {
+        List<Issue> list = new ArrayList<>();
+        KeysetSlice<Issue> slice = querying.toSlice(KeysetPoint.of(2)).on(em);
+        list.addAll(slice.getContent());
+        while (slice.hasNext()) {
+            slice = querying.toSlice(slice.nextPoint()).on(em);
+            list.addAll(slice.getContent());
+        }
+        return list;
+    }
+
     /**
      * <pre>
      * SELECT COUNT(ID) FROM ISSUE WHERE (TITLE = 'foo')
@@ -315,6 +371,70 @@ class QueryingTest {
     }
 
 
+    @Test
+    void testCountWithSubQuery() {
+        long count = Querying.of(IssueModel.root())
+            .filter(issue -> SubQuery.of(ProjectModel.root())
+                    .filter(prj -> prj.getName().eq("name1"))
+                    .filter(issue, (issue1, prj) -> issue1.getProject().eq(prj))
+                    .exists())
+            .count().on(em);
+        assertEquals(3L, count);
+    }
+
+
+    @Test
+    void testNestedQueryBuilding() {
+        List<Issue> issues = Querying.of(IssueModel.root())
+            .filter(issue -> {
+                // a query built while building another query does not break the enclosing context
+                long count = Querying.of(ProjectModel.root()).count().on(em);
+                return issue.getPriority().le((int) count);
+            })
+            .filter(issue -> SubQuery.of(ProjectModel.root())
+                    .filter(prj -> prj.getName().eq("name1"))
+                    .filter(issue, (issue1, prj) -> issue1.getProject().eq(prj))
+                    .exists())
+            .toList().on(em);
+        assertEquals(2, issues.size());
+        assertThrows(IllegalStateException.class, QueryContext::builder);
+    }
+
+
+    @Test
+    @SuppressWarnings("removal")
+    void testDeprecatedQueryContext() {
+        var cb = em.getCriteriaBuilder();
+        QueryContext.put(cb);
+        QueryContext.put(cb);
+        try (var scope = QueryContext.open(cb)) {
+            // the scope opened by open() is not closed by the deprecated close()
+            QueryContext.close();
+            assertSame(scope.put(cb.createQuery(Issue.class)), QueryContext.query());
+        }
+        assertSame(cb, QueryContext.builder());
+        QueryContext.close();
+        assertThrows(IllegalStateException.class, QueryContext::builder);
+    }
+
+
+    @Test
+    void testDistinctOnlyIfDuplicable() {
+        assertFalse(Querying.of(IssueModel.root())
+            .filter(issue -> issue.getProject().getName().eq("name1"))
+            .toCriteriaQuery().on(em).isDistinct());
+        assertTrue(Querying.of(IssueModel.root())
+            .filter(issue -> issue.joinJournals().getContent().eq("foo"))
+            .toCriteriaQuery().on(em).isDistinct());
+        assertTrue(Querying.of(IssueModel.root()).distinct()
+            .toCriteriaQuery().on(em).isDistinct());
+        assertFalse(Querying.of(IssueModel.root()).with(Hint.of("jakarta.persistence.query.timeout", 1000))
+            .toCriteriaQuery().on(em).isDistinct());
+        assertTrue(Querying.of(IssueModel.root()).with(Hint.loadOf(em.createEntityGraph(Issue.class)))
+            .toCriteriaQuery().on(em).isDistinct());
+    }
+
+
     private void createIssues() {
 
         var project1 = new Project(); project1.setName("name1");
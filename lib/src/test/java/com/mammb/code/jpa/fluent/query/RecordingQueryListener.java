@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The {@link QueryListener} which records the events, registered by the listener tests.
+ */
+public class RecordingQueryListener implements QueryListener {
+
+    static final Queue<Event> events = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void onExecuted(Event event) {
+        events.add(event);
+    }
+
+    static List<Event> events(Class<?> rootClass) {
+        return events.stream().filter(e -> e.rootClass() == rootClass).toList();
+    }
+
+}
@@ -16,6 +16,7 @@
 package com.mammb.code.jpa.fluent.query;
 
 import com.mammb.code.jpa.fluent.test.Fixtures;
+import com.mammb.code.jpa.fluent.test.entity.Issue;
 import com.mammb.code.jpa.fluent.test.entity.IssueModel;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
@@ -87,4 +88,58 @@ class SliceStreamTest {
 
     }
 
+
+    @Test
+    void testKeysetStream() {
+
+        var project1 = Fixtures.createProject("StreamingSliceTest", em);
+        IntStream.rangeClosed(1, 20).forEach(i -> Fixtures.createIssue(project1, "issue" + i, em));
+
+        var issues = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getProject().getName().eq("StreamingSliceTest"))
+            .sorted(issue -> issue.getTitle().desc())
+            .toKeysetStream(5).on(em).toList();
+
+        assertEquals("issue9", issues.get(0).getTitle());
+        assertEquals("issue1", issues.get(19).getTitle());
+        assertEquals(20, issues.stream().map(Issue::getTitle).distinct().count());
+
+    }
+
+
+    @Test
+    void testStreamWithDetach() {
+
+        var project1 = Fixtures.createProject("StreamingSliceTest", em);
+        IntStream.rangeClosed(1, 20).forEach(i -> Fixtures.createIssue(project1, "issue" + i, em));
+
+        var issues = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getProject().getName().eq("StreamingSliceTest"))
+            .toForwardingStream(5, ContextPolicy.DETACH).on(em).toList();
+
+        assertEquals(20, issues.size());
+        assertEquals(5, issues.stream().filter(em::contains).count());
+
+    }
+
+
+    @Test
+    void testCursorStream() {
+
+        assertEquals(Provider.ECLIPSELINK, Provider.of(em));
+
+        var project1 = Fixtures.createProject("StreamingSliceTest", em);
+        IntStream.rangeClosed(1, 20).forEach(i -> Fixtures.createIssue(project1, "issue" + i, em));
+
+        try (var stream = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getProject().getName().eq("StreamingSliceTest"))
+                .toCursorStream(5).on(em)) {
+            var issues = stream.toList();
+            assertEquals("issue1", issues.get(0).getTitle());
+            assertEquals("issue20", issues.get(19).getTitle());
+            assertEquals(20, issues.size());
+        }
+
+    }
+
 }
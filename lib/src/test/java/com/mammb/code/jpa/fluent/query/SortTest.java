@@ -116,4 +116,26 @@ class SortTest {
         assertEquals("issue1", issues.get(1).getTitle());
     }
 
+
+
+    @Test
+    void testFlattenedSorts() {
+        var project1 = Fixtures.createProject("project1", em);
+        Fixtures.createIssue(project1, "issue1", em);
+        Fixtures.createIssue(project1, "issue2", em);
+
+        Sorts<Issue, IssueModel.Root_> sorts = Sorts.of(e -> e.getTitle().desc());
+        for (int i = 0; i < 30; i++) {
+            sorts = sorts.and(e -> e.getId().asc());
+        }
+        sorts = sorts.ands(Sorts.of(e -> null, e -> e.getVersion().asc()));
+        assertEquals(33, ((Sorts.Composite<Issue, IssueModel.Root_>) sorts).parts().size());
+
+        List<Issue> issues = QueryBuilder.query(em, IssueModel.root(), Mapper.of(),
+            Filter.empty(), sorts, Hints.empty()).getResultList();
+        assertEquals(2, issues.size());
+        assertEquals("issue2", issues.get(0).getTitle());
+        assertEquals("issue1", issues.get(1).getTitle());
+    }
+
 }
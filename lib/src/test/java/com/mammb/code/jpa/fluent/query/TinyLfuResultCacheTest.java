@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TinyLfuResultCacheTest {
+
+    @Test
+    void testGetAndPut() {
+        var cache = new TinyLfuResultCache(10);
+        cache.put("a", 1);
+        assertEquals(1, cache.get("a"));
+        cache.put("a", 2);
+        assertEquals(2, cache.get("a"));
+        cache.remove("a");
+        assertNull(cache.get("a"));
+    }
+
+
+    @Test
+    void testSizeBounded() {
+        var cache = new TinyLfuResultCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 100);
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+
+    @Test
+    void testSmallCapacity() {
+        var cache = new TinyLfuResultCache(1);
+        cache.put("a", 1);
+        assertEquals(1, cache.get("a"));
+        cache.put("b", 2);
+        assertEquals(2, cache.get("b"));
+        assertEquals(1, cache.size());
+
+        cache = new TinyLfuResultCache(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, cache.get("a"));
+        }
+        assertEquals(2, cache.get("b"));
+        assertEquals(2, cache.size());
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(1, cache.get("a"));
+        assertEquals(2, cache.size());
+    }
+
+
+    @Test
+    void testFrequentValueSurvivesScan() {
+        var cache = new TinyLfuResultCache(100);
+        cache.put("hot", 1);
+        for (int i = 0; i < 10; i++) {
+            cache.get("hot");
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(1, cache.get("hot"));
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.query;
+
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdatingTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("testUnit");
+        em = emf.createEntityManager();
+    }
+
+
+    @AfterAll
+    static void tearDownAll() { em.close(); emf.close(); }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+        createIssues();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testUpdate() {
+        int count = Updating.of(IssueModel.root())
+            .set(issue -> issue.getPriority(), 3)
+            .filter(issue -> issue.getTitle().eq("foo"))
+            .execute().on(em);
+        em.clear();
+
+        assertEquals(2, count);
+        List<Issue> issues = Querying.of(IssueModel.root())
+            .filter(issue -> issue.getTitle().eq("foo"))
+            .toList().on(em);
+        assertTrue(issues.stream().allMatch(issue -> issue.getPriority() == 3));
+        assertEquals(1L, Querying.of(IssueModel.root())
+            .filter(issue -> issue.getPriority().eq(1)).count().on(em));
+    }
+
+
+    @Test
+    void testUpdateWithExpression() {
+        int count = Updating.of(IssueModel.root())
+            .setExpression(issue -> issue.getPriority(), issue -> issue.getPriority().sum(10))
+            .versioned()
+            .execute().on(em);
+        em.clear();
+
+        assertEquals(3, count);
+        List<Issue> issues = Querying.of(IssueModel.root()).toList().on(em);
+        assertTrue(issues.stream().allMatch(issue -> issue.getPriority() == 11));
+        assertTrue(issues.stream().allMatch(issue -> issue.getVersion() == 2L));
+    }
+
+
+    @Test
+    void testUpdateWithoutValue() {
+        assertThrows(IllegalStateException.class, () -> Updating.of(IssueModel.root()).execute().on(em));
+    }
+
+
+    private void createIssues() {
+        for (String title : List.of("foo", "foo", "bar")) {
+            var issue = new Issue();
+            issue.setTitle(title);
+            issue.setPriority(1);
+            em.persist(issue);
+        }
+        em.flush();
+    }
+
+}
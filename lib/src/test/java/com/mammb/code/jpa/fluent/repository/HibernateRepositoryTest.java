@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.jpa.fluent.repository;
+
+import com.mammb.code.jpa.fluent.query.CountStrategy;
+import com.mammb.code.jpa.fluent.query.LazyLoadDetector;
+import com.mammb.code.jpa.fluent.query.Provider;
+import com.mammb.code.jpa.fluent.query.QueryListener;
+import com.mammb.code.jpa.fluent.query.Querying;
+import com.mammb.code.jpa.fluent.query.SlicePoint;
+import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import com.mammb.code.jpa.fluent.test.entity.Project;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HibernateRepositoryTest {
+
+    static EntityManagerFactory emf;
+    static EntityManager em;
+    static IssueRepository repository = new IssueRepository();
+
+
+    @BeforeAll
+    static void initAll() {
+        emf = Persistence.createEntityManagerFactory("hibernateUnit");
+        em = emf.createEntityManager();
+        repository.em = em;
+    }
+
+
+    @AfterAll
+    static void tearDownAll() {
+        em.close();
+        emf.close();
+    }
+
+    @BeforeEach
+    void init() {
+        em.getTransaction().begin();
+    }
+
+    @AfterEach
+    void tearDown() {
+        em.getTransaction().rollback();
+    }
+
+
+    @Test
+    void testManaged() {
+        assertEquals(Provider.HIBERNATE, Provider.of(em));
+        var ids = createIssues();
+        Issue managed = em.find(Issue.class, ids.get(1));
+        assertSame(managed, Provider.of(em).managed(em, Issue.class, ids.get(1)));
+
+        // neither the entity not in the persistence context nor the missing one leaves a proxy
+        assertNull(Provider.of(em).managed(em, Issue.class, ids.get(0)));
+        assertNull(Provider.of(em).managed(em, Issue.class, -1L));
+        assertEquals(Issue.class, em.find(Issue.class, ids.get(0)).getClass());
+        assertNull(em.find(Issue.class, -1L));
+    }
+
+
+    @Test
+    void testGetMap() {
+        var ids = createIssues();
+        Issue managed = repository.get(ids.get(1)).orElseThrow();
+
+        var map = repository.getMap(List.of(ids.get(3), ids.get(1), -1L, ids.get(0)), 2);
+        assertEquals(List.of(ids.get(3), ids.get(1), ids.get(0)), List.copyOf(map.keySet()));
+        assertSame(managed, map.get(ids.get(1)));
+        assertEquals(Issue.class, map.get(ids.get(0)).getClass());
+    }
+
+
+    @Test
+    void testSaveAll() {
+        Provider.of(em).jdbcBatchSize(em, 5);
+        var closed = new AtomicBoolean();
+        var issues = IntStream.range(0, 25).mapToObj(i -> {
+            Issue issue = new Issue();
+            issue.setTitle("testSaveAll");
+            return issue;
+        }).onClose(() -> closed.set(true));
+
+        assertEquals(25L, repository.saveAll(issues, 10));
+        assertTrue(closed.get());
+        // the batch size of the session is restored
+        assertEquals(5, Provider.of(em).jdbcBatchSize(em, null));
+        assertEquals(25, repository.findAll(r -> r.getTitle().eq("testSaveAll")).size());
+    }
+
+
+    @Test
+    void testCappedCount() {
+        createIssues();
+        List<QueryListener.Event> events = new ArrayList<>();
+        QueryListener listener = events::add;
+        QueryListener.register(listener);
+        try {
+            var query = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().eq("HibernateRepositoryTest"));
+            var capped = query.toPage(SlicePoint.of(0, 2), CountStrategy.capped(3)).on(em);
+            assertEquals(3, capped.getTotalElements());
+            assertFalse(capped.isTotalExact());
+            var exact = query.toPage(SlicePoint.of(0, 2), CountStrategy.capped(10)).on(em);
+            assertEquals(5, exact.getTotalElements());
+            assertTrue(exact.isTotalExact());
+        } finally {
+            QueryListener.unregister(listener);
+        }
+        // counted in the database, not by reading the ids
+        List<QueryListener.Event> counts = events.stream()
+            .filter(e -> e.kind() == QueryListener.Kind.COUNT).toList();
+        assertEquals(2, counts.size());
+        assertTrue(counts.stream().allMatch(e -> e.size() == 1));
+    }
+
+
+    @Test
+    void testLazyLoadSharedTarget() {
+        var project = new Project();
+        project.setName("HibernateRepositoryTest");
+        em.persist(project);
+        for (int i = 0; i < 3; i++) {
+            Issue issue = new Issue();
+            issue.setTitle("HibernateRepositoryTest" + i);
+            issue.setProject(project);
+            em.persist(issue);
+        }
+        em.flush();
+        em.clear();
+
+        List<LazyLoadDetector.Violation> reported = new ArrayList<>();
+        try (var detector = LazyLoadDetector.open(em, 0, reported::add)) {
+            List<Issue> issues = Querying.of(IssueModel.root())
+                .filter(issue -> issue.getTitle().like("HibernateRepositoryTest"))
+                .toList().on(em);
+            assertEquals(3, issues.size());
+            // the issues share one project proxy, which is loaded once
+            issues.forEach(issue -> issue.getProject().getName());
+        }
+        assertEquals(1, reported.size());
+        assertEquals("project", reported.get(0).attribute());
+        assertEquals(1, reported.get(0).loads());
+    }
+
+
+    private List<Long> createIssues() {
+        var ids = IntStream.range(0, 5).mapToObj(i -> {
+            Issue issue = new Issue();
+            issue.setTitle("HibernateRepositoryTest");
+            return repository.save(issue);
+        }).map(Issue::getId).toList();
+        em.flush();
+        em.clear();
+        return ids;
+    }
+
+}
@@ -15,7 +15,18 @@
  */
 package com.mammb.code.jpa.fluent.repository;
 
+import com.mammb.code.jpa.fluent.query.CountCache;
+import com.mammb.code.jpa.fluent.query.CountStrategy;
+import com.mammb.code.jpa.fluent.query.Filter;
+import com.mammb.code.jpa.fluent.query.Filters;
+import com.mammb.code.jpa.fluent.query.KeysetPoint;
+import com.mammb.code.jpa.fluent.query.Provider;
+import com.mammb.code.jpa.fluent.query.SlicePoint;
+import com.mammb.code.jpa.fluent.query.SubQuery;
 import com.mammb.code.jpa.fluent.test.entity.Issue;
+import com.mammb.code.jpa.fluent.test.entity.IssueModel;
+import com.mammb.code.jpa.fluent.test.entity.Project;
+import com.mammb.code.jpa.fluent.test.entity.ProjectModel;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
@@ -24,8 +35,14 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class RepositoryTest {
 
@@ -90,4 +107,134 @@ public class RepositoryTest {
         assertEquals(2L, list.size());
     }
 
+
+    @Test
+    void testKeysetSliceRepository() {
+        Issue issue1 = new Issue();
+        issue1.setTitle("testKeysetSliceRepository");
+        Issue issue2 = new Issue();
+        issue2.setTitle("testKeysetSliceRepository");
+        repository.save(issue1);
+        repository.save(issue2);
+
+        var slice = repository.findSlice(KeysetPoint.of(1), r -> r.getTitle().eq("testKeysetSliceRepository"));
+        assertEquals(issue1.getId(), slice.getContent().get(0).getId());
+        assertTrue(slice.hasNext());
+
+        slice = repository.findSlice(slice.nextPoint(), r -> r.getTitle().eq("testKeysetSliceRepository"));
+        assertEquals(issue2.getId(), slice.getContent().get(0).getId());
+        assertFalse(slice.hasNext());
+    }
+
+
+    @Test
+    void testSaveAll() {
+        var issues = IntStream.range(0, 25).mapToObj(i -> {
+            Issue issue = new Issue();
+            issue.setTitle("testSaveAll");
+            return issue;
+        });
+
+        var count = repository.saveAll(issues, 10);
+        assertEquals(25L, count);
+
+        var list = repository.findAll(r -> r.getTitle().eq("testSaveAll"));
+        assertEquals(25L, list.size());
+    }
+
+
+    @Test
+    void testDeleteAll() {
+        IntStream.range(0, 3).forEach(i -> {
+            Issue issue = new Issue();
+            issue.setTitle("testDeleteAll");
+            repository.save(issue);
+        });
+        em.flush();
+
+        var count = repository.deleteAll(r -> r.getTitle().eq("testDeleteAll"));
+        assertEquals(3, count);
+
+        em.clear();
+        var list = repository.findAll(r -> r.getTitle().eq("testDeleteAll"));
+        assertEquals(0L, list.size());
+    }
+
+
+    @Test
+    void testDeleteAllWithSubQuery() {
+        Project project = new Project();
+        project.setName("testDeleteAllWithSubQuery");
+        em.persist(project);
+        IntStream.range(0, 3).forEach(i -> {
+            Issue issue = new Issue();
+            issue.setTitle("testDeleteAllWithSubQuery");
+            repository.save(issue);
+        });
+        em.flush();
+
+        var count = repository.deleteAll(r -> Filters.and(
+            r.getTitle().eq("testDeleteAllWithSubQuery"),
+            SubQuery.of(ProjectModel.root())
+                .filter(prj -> prj.getName().eq("testDeleteAllWithSubQuery"))
+                .exists()));
+        assertEquals(3, count);
+    }
+
+    @Test
+    void testGetAll() {
+        var ids = IntStream.range(0, 5).mapToObj(i -> {
+            Issue issue = new Issue();
+            issue.setTitle("testGetAll");
+            return repository.save(issue);
+        }).map(Issue::getId).toList();
+        em.flush();
+        em.clear();
+        Issue managed = repository.get(ids.get(1)).orElseThrow();
+        assertSame(managed, Provider.of(em).managed(em, Issue.class, ids.get(1)));
+
+        var list = repository.getAll(List.of(ids.get(3), ids.get(1), -1L, ids.get(0)));
+        assertEquals(3, list.size());
+        assertEquals(ids.get(3), list.get(0).getId());
+        assertSame(managed, list.get(1));
+        assertEquals(ids.get(0), list.get(2).getId());
+
+        var map = repository.getMap(ids, 2);
+        assertEquals(ids, List.copyOf(map.keySet()));
+        assertSame(managed, map.get(ids.get(1)));
+    }
+
+
+    @Test
+    void testFindPageWithCountCache() {
+        var cache = CountCache.of(10, Duration.ofMinutes(1));
+        var cached = new IssueRepository() {
+            @Override
+            public CountStrategy countStrategy() {
+                return CountStrategy.exact().cached(cache);
+            }
+        };
+        cached.em = em;
+        IntStream.range(0, 5).forEach(i -> {
+            Issue issue = new Issue();
+            issue.setTitle("testFindPageWithCountCache");
+            cached.save(issue);
+        });
+
+        Filter<Issue, IssueModel.Root_> filter = r -> r.getTitle().eq("testFindPageWithCountCache");
+        var page = cached.findPage(SlicePoint.of(0, 2), filter);
+        assertEquals(5, page.getTotalElements());
+        page = cached.findPage(SlicePoint.of(1, 2), filter);
+        assertEquals(5, page.getTotalElements());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        Issue issue = new Issue();
+        issue.setTitle("testFindPageWithCountCache");
+        cached.save(issue);
+        page = cached.findPage(SlicePoint.of(1, 2), filter);
+        assertEquals(6, page.getTotalElements());
+        assertEquals(2, cache.getMissCount());
+    }
+
 }
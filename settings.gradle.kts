@@ -1,2 +1,7 @@
 rootProject.name = "jpa-fluent-query"
-include("lib")
\ No newline at end of file
+include("lib")
+
+// the benchmarks resolve the JMH plugin, so they are included only when requested by -Pbenchmarks
+if (providers.gradleProperty("benchmarks").isPresent) {
+    include("benchmarks")
+}